@@ -0,0 +1,53 @@
+package com.example.xiangqi.benchmark;
+
+import com.example.xiangqi.util.Board;
+import com.example.xiangqi.util.BoardUtils;
+import com.example.xiangqi.util.Perft;
+
+import java.util.Map;
+
+public class BenchmarkPositions {
+    // Fixed corpus, rows from black's back rank down, '.' is an empty square
+    private static final Map<String, String[]> POSITIONS = Map.of(
+            "middlegame", new String[]{
+                    "r..akae..",
+                    "....a....",
+                    "..h.e.hc.",
+                    "p.p...p.p",
+                    "....c....",
+                    "..P...r..",
+                    "P...P.H.P",
+                    ".C..H..C.",
+                    "....A....",
+                    "R.E.KAE.R"},
+            "endgame", new String[]{
+                    "...akae..",
+                    "....a....",
+                    "....e....",
+                    "......p..",
+                    "..P......",
+                    "......H..",
+                    ".........",
+                    ".........",
+                    "....R....",
+                    "...K....."},
+            "checkmate", new String[]{
+                    "R...k....",
+                    "........R",
+                    ".........",
+                    ".........",
+                    ".........",
+                    ".........",
+                    "..P...P..",
+                    ".........",
+                    "....A....",
+                    "...KA...."}
+    );
+
+    public static Board get(String name) {
+        if (name.equals("opening")) {
+            return BoardUtils.getInitialBoardState();
+        }
+        return Perft.parse(POSITIONS.get(name));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.xiangqi.benchmark;
+
+import com.example.xiangqi.dto.model.Position;
+import com.example.xiangqi.dto.request.MoveRequest;
+import com.example.xiangqi.entity.redis.MatchStateEntity;
+import com.example.xiangqi.entity.redis.MatchStatePlayerEntity;
+import com.example.xiangqi.service.my_sql.RedisMatchService;
+import com.example.xiangqi.util.Board;
+import com.example.xiangqi.util.MoveGenerator;
+import com.example.xiangqi.util.MoveValidator;
+import com.example.xiangqi.util.Zobrist;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveValidatorBenchmark {
+    @Param({"opening", "middlegame", "endgame", "checkmate"})
+    String position;
+
+    Board board;
+    boolean isRedToMove;
+    // Every pseudo-legal move of both sides, legal and illegal alike
+    MoveRequest[] candidates;
+    // Legal moves of the side to move
+    int[] legalMoves;
+    int legalCount;
+    int[] scratch;
+    int cursor;
+
+    MatchStateEntity matchState;
+
+    @Setup
+    public void setup() {
+        board = BenchmarkPositions.get(position);
+        isRedToMove = MoveValidator.hasLegalMoves(board, true) && !MoveValidator.isKingInCheck(board, false);
+
+        // Candidate requests
+        int[] moves = new int[2 * MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generate(board, true, moves, 0);
+        count = MoveGenerator.generate(board, false, moves, count);
+        candidates = new MoveRequest[count];
+        for (int i = 0; i < count; i++) {
+            int from = MoveGenerator.from(moves[i]);
+            int to = MoveGenerator.to(moves[i]);
+            candidates[i] = MoveRequest.builder()
+                    .matchId(1L)
+                    .moverId(1L)
+                    .from(new Position(Board.row(from), Board.col(from)))
+                    .to(new Position(Board.row(to), Board.col(to)))
+                    .build();
+        }
+
+        // Legal moves of the side to move
+        legalMoves = new int[MoveGenerator.MAX_MOVES];
+        legalCount = MoveValidator.generateLegalMoves(board, isRedToMove, legalMoves);
+        scratch = new int[MoveGenerator.MAX_MOVES];
+
+        // Match state as read from Redis
+        matchState = MatchStateEntity.builder()
+                .boardState(board)
+                .redPlayer(MatchStatePlayerEntity.builder().id(1L).name("red").rating(1200).totalTimeLeft(900_000L).build())
+                .blackPlayer(MatchStatePlayerEntity.builder().id(2L).name("black").rating(1200).totalTimeLeft(900_000L).build())
+                .turn(isRedToMove ? 1L : 2L)
+                .lastMoveTime(Instant.now())
+                .mode("RANK")
+                .positionHash(Zobrist.hash(board, isRedToMove))
+                .version(0L)
+                .build();
+    }
+
+    @Benchmark
+    public boolean isValidMove() {
+        MoveRequest request = candidates[cursor];
+        cursor = cursor + 1 == candidates.length ? 0 : cursor + 1;
+        return MoveValidator.isValidMove(board, request);
+    }
+
+    @Benchmark
+    public boolean hasLegalMoves() {
+        return MoveValidator.hasLegalMoves(board, isRedToMove);
+    }
+
+    @Benchmark
+    public int generateLegalMoves() {
+        return MoveValidator.generateLegalMoves(board, isRedToMove, scratch);
+    }
+
+    @Benchmark
+    public void applyMove(Blackhole blackhole) {
+        if (legalCount == 0) {
+            return; // Side to move is mated
+        }
+        int move = legalMoves[cursor % legalCount];
+        cursor++;
+        int from = MoveGenerator.from(move);
+        int to = MoveGenerator.to(move);
+
+        // Same state updates as MatchService.applyMove, then the commit-move script arguments
+        long positionHash = matchState.getPositionHash();
+        byte movedPiece = board.get(from);
+        byte captured = board.makeMove(from, to);
+        matchState.setPositionHash(Zobrist.update(positionHash, movedPiece, from, to, captured));
+        MatchStatePlayerEntity mover = isRedToMove ? matchState.getRedPlayer() : matchState.getBlackPlayer();
+        MatchStatePlayerEntity opponent = isRedToMove ? matchState.getBlackPlayer() : matchState.getRedPlayer();
+        Instant now = Instant.now();
+        mover.setTotalTimeLeft(mover.getTotalTimeLeft() - (now.toEpochMilli() - matchState.getLastMoveTime().toEpochMilli()));
+        matchState.setTurn(opponent.getId());
+        matchState.setLastMoveTime(now);
+        long deadline = now.toEpochMilli() + opponent.getTotalTimeLeft();
+        blackhole.consume(RedisMatchService.commitMoveArgs(1L, matchState, from, to, positionHash, mover.getId(), deadline));
+
+        // Restore the corpus position
+        board.unmakeMove(from, to, captured);
+        matchState.setTurn(mover.getId());
+        matchState.setPositionHash(positionHash);
+    }
+}
@@ -1,9 +1,15 @@
 package com.example.xiangqi.config;
 
+import com.example.xiangqi.config.serializer.BoardFenDeserializer;
+import com.example.xiangqi.config.serializer.MatchStateRedisSerializer;
 import com.example.xiangqi.entity.redis.MatchContractEntity;
 import com.example.xiangqi.entity.redis.MatchStateEntity;
+import com.example.xiangqi.listener.RatingEvictionListener;
 import com.example.xiangqi.listener.RedisKeyExpirationListener;
+import com.example.xiangqi.service.my_sql.RatingCacheService;
+import com.example.xiangqi.util.Board;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -59,18 +65,24 @@ public class RedisConfig {
         // Register time module
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
-        // Define value serializer
-        Jackson2JsonRedisSerializer<MatchStateEntity> serializer = new Jackson2JsonRedisSerializer<>(objectMapper, MatchStateEntity.class);
-        template.setValueSerializer(serializer);
+        // Boards in JSON states are FEN or the older array layout
+        objectMapper.registerModule(new SimpleModule()
+                .addDeserializer(Board.class, new BoardFenDeserializer()));
+        // Read-only, match states are hashes now and this template only migrates values left from before
+        Jackson2JsonRedisSerializer<MatchStateEntity> jsonSerializer = new Jackson2JsonRedisSerializer<>(objectMapper, MatchStateEntity.class);
+        template.setValueSerializer(new MatchStateRedisSerializer(jsonSerializer));
 
         return template;
     }
 
     @Bean
-    public RedisMessageListenerContainer redisContainer(RedisConnectionFactory factory, RedisKeyExpirationListener expirationListener) {
+    public RedisMessageListenerContainer redisContainer(RedisConnectionFactory factory,
+                                                        RedisKeyExpirationListener expirationListener,
+                                                        RatingEvictionListener ratingEvictionListener) {
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(factory);
         container.addMessageListener(expirationListener, new ChannelTopic("__keyevent@0__:expired"));
+        container.addMessageListener(ratingEvictionListener, new ChannelTopic(RatingCacheService.RATING_EVICTION_CHANNEL));
         return container;
     }
 }
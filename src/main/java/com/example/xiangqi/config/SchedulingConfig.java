@@ -0,0 +1,71 @@
+package com.example.xiangqi.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+// Background work of the services: polls and ticks are @Scheduled on the scheduler below, handlers run on the named pools.
+// Spring starts them once the context is ready and drains them on shutdown
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+    // Picked by name for @Scheduled, the WebSocket broker defines a scheduler of its own
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${scheduling.pool-size}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("scheduler-");
+        scheduler.setPoolSize(poolSize);
+        return scheduler;
+    }
+
+    // Defining any executor turns off Boot's default one, which serves async MVC responses
+    @Bean(name = {"applicationTaskExecutor", "taskExecutor"})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(ThreadPoolTaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    // Deadline handlers, a full queue runs them on the poller, which stops claiming until the pool catches up
+    @Bean
+    public ThreadPoolTaskExecutor deadlineExecutor(@Value("${deadline.workers}") int workers,
+                                                   @Value("${deadline.queue-capacity}") int queueCapacity) {
+        return boundedExecutor("deadline-", workers, queueCapacity);
+    }
+
+    // Match clock timeouts, off the timing wheel thread
+    @Bean
+    public ThreadPoolTaskExecutor matchClockExecutor(@Value("${match.clock.workers}") int workers) {
+        return boundedExecutor("match-clock-", workers, Integer.MAX_VALUE);
+    }
+
+    // Expired key handlers, off the listener container thread
+    @Bean
+    public ThreadPoolTaskExecutor redisExpirationExecutor(@Value("${redis.expiration.workers}") int workers,
+                                                          @Value("${redis.expiration.queue-capacity}") int queueCapacity) {
+        return boundedExecutor("redis-expiration-", workers, queueCapacity);
+    }
+
+    // Size-triggered action log flushes, at most one waits at a time
+    @Bean
+    public ThreadPoolTaskExecutor actionLogExecutor() {
+        return boundedExecutor("action-log-", 1, Integer.MAX_VALUE);
+    }
+
+    private static ThreadPoolTaskExecutor boundedExecutor(String threadNamePrefix, int threads, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        // Let running handlers finish when the context closes
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+}
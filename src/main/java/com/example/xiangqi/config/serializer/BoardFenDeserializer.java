@@ -0,0 +1,29 @@
+package com.example.xiangqi.config.serializer;
+
+import com.example.xiangqi.util.Board;
+import com.example.xiangqi.util.FenCodec;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+// Read a board from its FEN piece placement, also accepts the nested String[][] layout of older states
+public class BoardFenDeserializer extends StdDeserializer<Board> {
+    public BoardFenDeserializer() {
+        super(Board.class);
+    }
+
+    @Override
+    public Board deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.currentToken() == JsonToken.START_ARRAY) {
+            return Board.fromArray(parser.readValueAs(String[][].class));
+        }
+        try {
+            return FenCodec.fromFen(parser.getValueAsString());
+        } catch (IllegalArgumentException e) {
+            return (Board) context.handleWeirdStringValue(Board.class, parser.getText(), e.getMessage());
+        }
+    }
+}
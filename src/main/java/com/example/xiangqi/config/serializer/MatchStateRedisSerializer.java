@@ -0,0 +1,94 @@
+package com.example.xiangqi.config.serializer;
+
+import com.example.xiangqi.entity.redis.MatchStateEntity;
+import com.example.xiangqi.entity.redis.MatchStatePlayerEntity;
+import com.example.xiangqi.util.Board;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Read-only decoder of match states stored as one value before the per-field hash: the fixed binary layout and, before it, JSON
+public class MatchStateRedisSerializer implements RedisSerializer<MatchStateEntity> {
+    // Layout version, first byte of every value. JSON values start with '{'
+    private static final byte VERSION = 1;
+    private static final byte JSON_START = '{';
+
+    // Turn and mode codes, black's turn and normal mode were written as 1 and 0
+    private static final byte RED_TURN = 0;
+    private static final byte RANK_MODE = 1;
+
+    private final RedisSerializer<MatchStateEntity> jsonSerializer;
+
+    public MatchStateRedisSerializer(RedisSerializer<MatchStateEntity> jsonSerializer) {
+        this.jsonSerializer = jsonSerializer;
+    }
+
+    // States are written as hashes now, this only reads values left from before
+    @Override
+    public byte[] serialize(MatchStateEntity entity) throws SerializationException {
+        throw new SerializationException("Match states are no longer written as a single value");
+    }
+
+    @Override
+    public MatchStateEntity deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == JSON_START) {
+            return jsonSerializer.deserialize(bytes);
+        }
+        if (bytes[0] != VERSION) {
+            throw new SerializationException("Unknown match state version: " + bytes[0]);
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+            Board board = Board.readPacked(buffer);
+            MatchStatePlayerEntity redPlayer = readPlayer(buffer);
+            MatchStatePlayerEntity blackPlayer = readPlayer(buffer);
+            byte turn = buffer.get();
+            byte mode = buffer.get();
+            Instant lastMoveTime = Instant.ofEpochMilli(buffer.getLong());
+            long positionHash = buffer.getLong();
+            int historySize = buffer.getInt();
+            List<Long> history = new ArrayList<>(historySize + 1);
+            for (int i = 0; i < historySize; i++) {
+                history.add(buffer.getLong());
+            }
+
+            return MatchStateEntity.builder()
+                    .boardState(board)
+                    .redPlayer(redPlayer)
+                    .blackPlayer(blackPlayer)
+                    .turn(turn == RED_TURN ? redPlayer.getId() : blackPlayer.getId())
+                    .lastMoveTime(lastMoveTime)
+                    .mode(mode == RANK_MODE ? "RANK" : "NORMAL")
+                    .positionHash(positionHash)
+                    .positionHistory(history)
+                    .build();
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new SerializationException("Malformed match state", e);
+        }
+    }
+
+    // Player: id, rating, time left, then the UTF-8 name prefixed by its length
+    private static MatchStatePlayerEntity readPlayer(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        int rating = buffer.getInt();
+        long totalTimeLeft = buffer.getLong();
+        byte[] name = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(name);
+        return MatchStatePlayerEntity.builder()
+                .id(id)
+                .name(new String(name, StandardCharsets.UTF_8))
+                .rating(rating)
+                .totalTimeLeft(totalTimeLeft)
+                .build();
+    }
+}
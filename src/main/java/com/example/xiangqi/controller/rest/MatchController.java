@@ -1,13 +1,18 @@
 package com.example.xiangqi.controller.rest;
 
 import com.example.xiangqi.helper.ResponseObject;
+import com.example.xiangqi.repository.GameArchive;
 import com.example.xiangqi.service.my_sql.MatchService;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.channels.Channels;
 
 import static com.example.xiangqi.helper.ResponseBuilder.buildResponse;
 
@@ -19,8 +24,34 @@ public class MatchController {
     MatchService matchService;
 
     @GetMapping("/{matchId}")
-    public ResponseEntity<ResponseObject> getMatch(@PathVariable Long matchId) {
-        // Fetch board state
-        return buildResponse(HttpStatus.OK, "Board state fetch successfully.", matchService.getMatchStateById(matchId));
+    public ResponseEntity<ResponseObject> getMatch(
+            @PathVariable Long matchId,
+            @RequestParam(defaultValue = "array") String boardFormat) {
+        // Fetch board state, as FEN when boardFormat=fen
+        return buildResponse(HttpStatus.OK, "Board state fetch successfully.",
+                matchService.getMatchStateById(matchId, boardFormat.equalsIgnoreCase("fen")));
+    }
+
+    @GetMapping("/{matchId}/legal-moves")
+    public ResponseEntity<ResponseObject> getLegalMoves(@PathVariable Long matchId) {
+        // Fetch legal moves of the player to move
+        return buildResponse(HttpStatus.OK, "Legal moves fetch successfully.", matchService.getLegalMovesById(matchId));
+    }
+
+    @GetMapping("/{matchId}/replay")
+    public ResponseEntity<ResponseObject> getReplay(
+            @PathVariable Long matchId,
+            @RequestParam(defaultValue = "0") int ply) {
+        // Fetch the position of a finished match after the given number of moves
+        return buildResponse(HttpStatus.OK, "Replay fetch successfully.", matchService.getReplayById(matchId, ply));
+    }
+
+    @GetMapping("/archive/export")
+    public ResponseEntity<StreamingResponseBody> exportArchive() {
+        // Stream every game archived on this node, records as stored in the segments
+        GameArchive gameArchive = matchService.getGameArchive();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(outputStream -> gameArchive.export(Channels.newChannel(outputStream)));
     }
 }
@@ -0,0 +1,26 @@
+package com.example.xiangqi.controller.rest;
+
+import com.example.xiangqi.helper.ResponseObject;
+import com.example.xiangqi.service.my_sql.QueueService;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import static com.example.xiangqi.helper.ResponseBuilder.buildResponse;
+
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RestController
+@RequestMapping("/api/queue")
+public class QueueController {
+    QueueService queueService;
+
+    @GetMapping("/stats")
+    public ResponseEntity<ResponseObject> getQueueStats() {
+        // Fetch queue size and wait times
+        return buildResponse(HttpStatus.OK, "Queue stats fetch successfully.", queueService.getQueueStats());
+    }
+}
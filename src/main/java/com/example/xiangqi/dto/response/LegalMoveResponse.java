@@ -0,0 +1,20 @@
+package com.example.xiangqi.dto.response;
+
+import com.example.xiangqi.dto.model.Position;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class LegalMoveResponse {
+    Position from;
+
+    List<Position> to;
+}
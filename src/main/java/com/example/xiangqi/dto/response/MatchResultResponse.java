@@ -16,4 +16,7 @@ public class MatchResultResponse {
     Integer ratingGain;
 
     Integer ratingLoss;
+
+    // Match state version the match ended at
+    Long version;
 }
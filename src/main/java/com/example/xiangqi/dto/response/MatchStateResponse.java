@@ -1,6 +1,8 @@
 package com.example.xiangqi.dto.response;
 
 import com.example.xiangqi.entity.redis.MatchStatePlayerEntity;
+import com.example.xiangqi.util.Board;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -14,7 +16,13 @@ import java.time.Instant;
 @Builder
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class MatchStateResponse {
-    String[][] boardState;
+    // Board in the String[][] layout, omitted when boardFen is requested
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Board boardState;
+
+    // Board as FEN piece placement, only when requested
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String boardFen;
 
     MatchStatePlayerResponse redPlayer;
 
@@ -23,4 +31,7 @@ public class MatchStateResponse {
     Long turn;
 
     Instant lastMoveTime;
+
+    // Match state version, matches the version of the latest "Piece moved." message
+    Long version;
 }
@@ -1,12 +1,15 @@
 package com.example.xiangqi.dto.response;
 
 import com.example.xiangqi.dto.model.Position;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.experimental.FieldDefaults;
 
+import java.util.List;
+
 @Data
 @AllArgsConstructor
 @Builder
@@ -15,4 +18,11 @@ public class MoveResponse {
     Position from;
 
     Position to;
+
+    // Legal moves of the player to move next, omitted when disabled
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    List<LegalMoveResponse> legalMoves;
+
+    // Match state version after the move, consecutive moves differ by one
+    Long version;
 }
@@ -0,0 +1,20 @@
+package com.example.xiangqi.dto.response;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class QueueStatsResponse {
+    // Players waiting for an opponent
+    Long size;
+
+    Long longestWaitMillis;
+
+    Long averageWaitMillis;
+}
@@ -0,0 +1,27 @@
+package com.example.xiangqi.dto.response;
+
+import com.example.xiangqi.dto.model.Position;
+import com.example.xiangqi.util.Board;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ReplayResponse {
+    Integer ply;
+
+    // Number of moves of the whole game
+    Integer plyCount;
+
+    // Move that led to this ply, null at ply 0
+    Position from;
+
+    Position to;
+
+    Board boardState;
+}
@@ -20,7 +20,11 @@ import java.time.Instant;
 })
 public class ActionEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Ids are reserved 50 at a time, IDENTITY would make Hibernate insert moves one by one
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "action_id")
+    @TableGenerator(name = "action_id", schema = "xiangqi", table = "id_generators",
+            pkColumnName = "name", valueColumnName = "next_val", pkColumnValue = "actions",
+            allocationSize = 50)
     @Column(name = "id", nullable = false)
     Long id;
 
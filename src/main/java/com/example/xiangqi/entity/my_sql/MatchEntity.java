@@ -45,6 +45,11 @@ public class MatchEntity {
     @Column(name = "end_time")
     Instant endTime;
 
+    // Finished game encoded by MoveListCodec, null while playing
+    @Lob
+    @Column(name = "move_list")
+    byte[] moveList;
+
     @PrePersist void control(){
         setStartTime(Instant.now());
         setResult("PLAYING...");
@@ -1,9 +1,11 @@
 package com.example.xiangqi.entity.redis;
 
+import com.example.xiangqi.util.Board;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
 import java.time.Instant;
+import java.util.List;
 
 @Getter
 @Setter
@@ -12,7 +14,7 @@ import java.time.Instant;
 @Builder
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class MatchStateEntity {
-    String[][] boardState;
+    Board boardState;
 
     MatchStatePlayerEntity redPlayer;
 
@@ -23,4 +25,13 @@ public class MatchStateEntity {
     Instant lastMoveTime;
 
     String mode;
+
+    // Zobrist hash of the current position
+    Long positionHash;
+
+    // Zobrist hashes of every previous position, oldest first
+    List<Long> positionHistory;
+
+    // Number of committed moves, checked before each commit
+    Long version;
 }
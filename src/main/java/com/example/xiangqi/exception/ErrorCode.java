@@ -30,6 +30,11 @@ public enum ErrorCode {
     MATCH_CONTRACT_NOT_FOUND(HttpStatus.NOT_FOUND, "Match contract not found."),
     // Match
     MATCH_NOT_FOUND(HttpStatus.NOT_FOUND, "Match not found."),
+    MATCH_STATE_CONFLICT(HttpStatus.CONFLICT, "Match state has changed."),
+    // Replay
+    REPLAY_NOT_FOUND(HttpStatus.NOT_FOUND, "Replay not found."),
+    INVALID_PLY(HttpStatus.BAD_REQUEST, "Ply out of range."),
+    GAME_ARCHIVE_DISABLED(HttpStatus.NOT_FOUND, "Game archive is not enabled on this node."),
     // Board State
     BOARD_STATE_SERIALIZED_FAIL(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to serialize board state"),
     BOARD_STATE_PARSING_FAIL(HttpStatus.INTERNAL_SERVER_ERROR, "Error parsing board state from Redis"),
@@ -0,0 +1,24 @@
+package com.example.xiangqi.listener;
+
+import com.example.xiangqi.service.my_sql.RatingCacheService;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RatingEvictionListener implements MessageListener {
+    RatingCacheService ratingCacheService;
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        // Body is the id of the player whose rating changed
+        ratingCacheService.evictLocal(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+    }
+}
@@ -2,31 +2,79 @@ package com.example.xiangqi.listener;
 
 import com.example.xiangqi.service.my_sql.MatchContractService;
 import com.example.xiangqi.service.my_sql.MatchService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.AccessLevel;
-import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 @Component
-@RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
 public class RedisKeyExpirationListener implements MessageListener {
-    MatchService matchService;
-    MatchContractService matchContractService;
+    // Handlers by key prefix, any other expired key (tokens, locks) is dropped without parsing
+    Map<String, KeyHandler> handlers;
+    // Handler work, off the listener container thread
+    ThreadPoolTaskExecutor executor;
+    // Keys queued or running, repeated deliveries of the same key are dropped
+    Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private record KeyHandler(Pattern pattern, Consumer<String> handler) {
+    }
+
+    public RedisKeyExpirationListener(MatchService matchService,
+                                      MatchContractService matchContractService,
+                                      MeterRegistry meterRegistry,
+                                      @Qualifier("redisExpirationExecutor") ThreadPoolTaskExecutor executor) {
+        // Only clocks written before the deadlines sorted set still arrive here, DeadlineService handles the rest
+        this.handlers = Map.of(
+                "match", new KeyHandler(Pattern.compile("match:(\\d+):expiration:"),
+                        matchId -> matchService.handleMatchExpiration(Long.valueOf(matchId))),
+                "matchContract", new KeyHandler(Pattern.compile("matchContract:([^:]+):expiration:"),
+                        matchContractService::handleMatchContractExpiration));
+        this.executor = executor;
+        Gauge.builder("redis.expiration.queue.depth", executor, ThreadPoolTaskExecutor::getQueueSize)
+                .description("Expired key events waiting for a worker")
+                .register(meterRegistry);
+    }
 
     @Override
     public void onMessage(Message message, byte[] pattern) {
-        String key = new String(message.getBody());
-        if (key.matches("match:.*:expiration:")) {
-            String[] parts = key.split(":");
-            String matchId = parts[1];
-            matchService.handleMatchExpiration(Long.valueOf(matchId));
-        } else if (key.matches("matchContract:.*:expiration:")) {
-            String[] parts = key.split(":");
-            String matchContractId = parts[1];
-            matchContractService.handleMatchContractExpiration(matchContractId);
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+
+        // Dispatch on the prefix before the first ':'
+        int separator = key.indexOf(':');
+        KeyHandler keyHandler = separator > 0 ? handlers.get(key.substring(0, separator)) : null;
+        if (keyHandler == null) {
+            return;
         }
+        Matcher matcher = keyHandler.pattern().matcher(key);
+        if (!matcher.matches() || !inFlight.add(key)) {
+            return;
+        }
+
+        String id = matcher.group(1);
+        executor.execute(() -> {
+            try {
+                keyHandler.handler().accept(id);
+            } catch (Exception e) {
+                log.error("Failed to handle expired key {}", key, e);
+            } finally {
+                inFlight.remove(key);
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -13,5 +13,6 @@ public interface MatchStateMapper {
 	// Add
 	@Mapping(target = "redPlayer", source = "redPlayer")
 	@Mapping(target = "blackPlayer", source = "blackPlayer")
+	@Mapping(target = "boardFen", ignore = true)
 	MatchStateResponse toResponse(MatchStateEntity entity);
 }
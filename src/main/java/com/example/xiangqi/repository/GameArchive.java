@@ -0,0 +1,23 @@
+package com.example.xiangqi.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+
+// Bulk store of finished games, written once and read back whole. Local to the node that ended the game,
+// so it is a cache and an export source, never the only copy
+public interface GameArchive {
+    // Finished game, moveList is encoded by MoveListCodec
+    record ArchivedGame(Long matchId, Long redPlayerId, Long blackPlayerId, String result,
+                        Instant startTime, Instant endTime, ByteBuffer moveList) {
+    }
+
+    void append(ArchivedGame game) throws IOException;
+
+    // Latest game archived under the id, null when none. Its move list is a read-only view of the store
+    ArchivedGame find(Long matchId);
+
+    // Copy every stored record in append order, for analytics
+    void export(WritableByteChannel target) throws IOException;
+}
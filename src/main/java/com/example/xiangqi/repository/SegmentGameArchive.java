@@ -0,0 +1,229 @@
+package com.example.xiangqi.repository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only segment files under one directory, segment-000000.dat, segment-000001.dat, ...
+// Record: body length, CRC32 of the body, then the body:
+// match id, red player id, black player id, start and end epoch millis, result length and UTF-8 result, move list.
+// Appends go through the last segment's FileChannel, reads are slices of each segment's read-only mapping.
+// A new segment is preallocated to segment-bytes and mapped once, so reads of fresh records need no remap.
+// The match id index lives in memory and is rebuilt by scanning the segments on startup
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "game-archive.enabled", havingValue = "true")
+public class SegmentGameArchive implements GameArchive {
+    private static final String SEGMENT_FORMAT = "segment-%06d.dat";
+    // Body length, CRC32
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+    // Ids, times, result length
+    private static final int BODY_FIXED_BYTES = Long.BYTES * 5 + 1;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Map<Long, Location> index = new ConcurrentHashMap<>();
+
+    private record Location(Segment segment, int position, int length) {
+    }
+
+    public SegmentGameArchive(@Value("${game-archive.directory}") String directory,
+                              @Value("${game-archive.segment-bytes}") long segmentBytes) throws IOException {
+        this.directory = Path.of(directory);
+        this.segmentBytes = Math.min(segmentBytes, Integer.MAX_VALUE);
+        Files.createDirectories(this.directory);
+
+        // Reopen existing segments in order and index their records
+        try (Stream<Path> files = Files.list(this.directory)) {
+            List<Path> paths = files.filter(path -> path.getFileName().toString().matches("segment-\\d{6}\\.dat"))
+                    .sorted().toList();
+            for (int i = 0; i < paths.size(); i++) {
+                Segment segment = new Segment(paths.get(i));
+                segments.add(segment);
+                scan(segment, i == paths.size() - 1);
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.add(new Segment(this.directory.resolve(String.format(SEGMENT_FORMAT, 0))));
+        }
+        segments.get(segments.size() - 1).reserve(this.segmentBytes);
+        log.info("Game archive opened with {} games in {} segments", index.size(), segments.size());
+    }
+
+    @Override
+    public synchronized void append(ArchivedGame game) throws IOException {
+        byte[] result = game.result().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer moveList = game.moveList().duplicate();
+        int bodyLength = BODY_FIXED_BYTES + result.length + moveList.remaining();
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + bodyLength);
+        record.position(RECORD_HEADER_BYTES);
+        record.putLong(game.matchId());
+        record.putLong(game.redPlayerId());
+        record.putLong(game.blackPlayerId());
+        record.putLong(game.startTime().toEpochMilli());
+        record.putLong(game.endTime().toEpochMilli());
+        record.put((byte) result.length);
+        record.put(result);
+        record.put(moveList);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, bodyLength);
+        record.putInt(0, bodyLength);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        record.flip();
+
+        // Roll over once the segment is full
+        Segment segment = segments.get(segments.size() - 1);
+        if (segment.size > 0 && segment.size + record.remaining() > segmentBytes) {
+            segment = new Segment(directory.resolve(String.format(SEGMENT_FORMAT, segments.size())));
+            segment.reserve(segmentBytes);
+            segments.add(segment);
+        }
+
+        int position = (int) segment.size;
+        while (record.hasRemaining()) {
+            segment.channel.write(record, segment.size + record.position());
+        }
+        segment.channel.force(false);
+        segment.size += record.limit();
+        index.put(game.matchId(), new Location(segment, position, record.limit()));
+    }
+
+    @Override
+    public ArchivedGame find(Long matchId) {
+        Location location = index.get(matchId);
+        if (location == null) {
+            return null;
+        }
+        try {
+            return read(location.segment().slice(location.position(), location.length()));
+        } catch (IOException e) {
+            log.error("Failed to read archived match {}", matchId, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void export(WritableByteChannel target) throws IOException {
+        for (Segment segment : segments) {
+            // Copy up to the size at the start, later appends are left for the next export
+            long size = segment.size;
+            for (long position = 0; position < size; ) {
+                position += segment.channel.transferTo(position, size - position, target);
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.channel.close();
+        }
+    }
+
+    // Index every valid record and set the size to the end of the last one.
+    // Zeros after it are preallocated room, anything else is a torn record, cut off in the last segment
+    private void scan(Segment segment, boolean isLast) throws IOException {
+        ByteBuffer buffer = segment.slice(0, (int) segment.size);
+        int position = 0;
+        while (position + RECORD_HEADER_BYTES <= buffer.limit()) {
+            int bodyLength = buffer.getInt(position);
+            int end = position + RECORD_HEADER_BYTES + bodyLength;
+            if (bodyLength < BODY_FIXED_BYTES || end > buffer.limit() || end < 0) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(position + RECORD_HEADER_BYTES, bodyLength));
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            index.put(buffer.getLong(position + RECORD_HEADER_BYTES), new Location(segment, position, end - position));
+            position = end;
+        }
+        boolean isPadding = position + Integer.BYTES <= buffer.limit() && buffer.getInt(position) == 0;
+        if (position < buffer.limit() && !isPadding) {
+            log.warn("Game archive segment {} has {} unreadable bytes at {}", segment.path, buffer.limit() - position, position);
+            if (isLast) {
+                segment.channel.truncate(position);
+                // The mapping still spans the cut bytes
+                segment.mapped = null;
+            }
+        }
+        segment.size = position;
+    }
+
+    private static ArchivedGame read(ByteBuffer record) {
+        int position = RECORD_HEADER_BYTES;
+        long matchId = record.getLong(position);
+        long redPlayerId = record.getLong(position + Long.BYTES);
+        long blackPlayerId = record.getLong(position + Long.BYTES * 2);
+        long startTime = record.getLong(position + Long.BYTES * 3);
+        long endTime = record.getLong(position + Long.BYTES * 4);
+        int resultLength = record.get(position + Long.BYTES * 5) & 0xFF;
+        int resultStart = position + BODY_FIXED_BYTES;
+        byte[] result = new byte[resultLength];
+        record.get(resultStart, result);
+        int moveListStart = resultStart + resultLength;
+        return new ArchivedGame(matchId, redPlayerId, blackPlayerId, new String(result, StandardCharsets.UTF_8),
+                Instant.ofEpochMilli(startTime), Instant.ofEpochMilli(endTime),
+                record.slice(moveListStart, record.limit() - moveListStart).asReadOnlyBuffer());
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        // Bytes of records, the file may be longer. Only changed under the archive's lock
+        private volatile long size;
+        // Read-only mapping of the whole file, remapped only when a record outgrew the preallocated length
+        private volatile MappedByteBuffer mapped;
+
+        private Segment(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+
+        // Grow the file to the capacity and map all of it
+        private synchronized void reserve(long capacity) throws IOException {
+            if (channel.size() < capacity) {
+                channel.write(ByteBuffer.allocate(1), capacity - 1);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        private ByteBuffer slice(int position, int length) throws IOException {
+            MappedByteBuffer current = mapped;
+            if (current == null || position + length > current.capacity()) {
+                current = remap(position + length);
+            }
+            return current.slice(position, length);
+        }
+
+        private synchronized MappedByteBuffer remap(int minSize) throws IOException {
+            if (mapped == null || minSize > mapped.capacity()) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            return mapped;
+        }
+    }
+}
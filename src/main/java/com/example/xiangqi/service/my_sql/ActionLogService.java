@@ -0,0 +1,174 @@
+package com.example.xiangqi.service.my_sql;
+
+import com.example.xiangqi.entity.my_sql.ActionEntity;
+import com.example.xiangqi.repository.ActionRepository;
+import com.example.xiangqi.repository.MatchRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Write-behind log of applied moves: recording only queues the move,
+// one flush at a time inserts queued moves in JDBC batches once a batch fills up or every flush interval.
+// A failed batch is kept and retried with backoff before anything else is drained, so moves are not lost to a short outage.
+// After max-retries the batch is written row by row and rows that still fail are logged and skipped.
+// Recording waits at most offer-timeout for room, the move list kept for replays still has a move dropped here
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Service
+public class ActionLogService {
+    ActionRepository actionRepository;
+    MatchRepository matchRepository;
+    TransactionTemplate transactionTemplate;
+    long flushMillis;
+    int batchSize;
+    int maxRetries;
+    long offerTimeoutMillis;
+    BlockingQueue<PendingAction> queue;
+    // Runs size-triggered flushes, the interval ones are @Scheduled
+    ThreadPoolTaskExecutor flusher;
+    // Set while a size-triggered flush is waiting to run
+    AtomicBoolean isFlushRequested = new AtomicBoolean();
+    // Batch whose insert failed, written before the queue is drained again. Guarded by flush's lock
+    List<PendingAction> failed = new ArrayList<>();
+    // No write before this time after a failure, the delay doubles with each failure in a row. Guarded by flush's lock
+    @NonFinal
+    long retryAt;
+    @NonFinal
+    long backoffMillis;
+    @NonFinal
+    int failures;
+
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private record PendingAction(Long matchId, Integer moveNumber, String chessPiece,
+                                 String fromPosition, String toPosition, Instant moveTime) {
+    }
+
+    public ActionLogService(ActionRepository actionRepository,
+                            MatchRepository matchRepository,
+                            PlatformTransactionManager transactionManager,
+                            @Qualifier("actionLogExecutor") ThreadPoolTaskExecutor flusher,
+                            @Value("${action-log.flush-millis}") long flushMillis,
+                            @Value("${action-log.batch-size}") int batchSize,
+                            @Value("${action-log.queue-capacity}") int queueCapacity,
+                            @Value("${action-log.max-retries}") int maxRetries,
+                            @Value("${action-log.offer-timeout-millis}") long offerTimeoutMillis) {
+        this.actionRepository = actionRepository;
+        this.matchRepository = matchRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.flushMillis = flushMillis;
+        this.batchSize = batchSize;
+        this.maxRetries = maxRetries;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flusher = flusher;
+    }
+
+    // Only waits when the queue is full, which means MySQL is down or far behind, and then at most offer-timeout
+    public void record(Long matchId, Integer moveNumber, char chessPiece, int fromRow, int fromCol,
+                       int toRow, int toCol, Instant moveTime) {
+        PendingAction action = new PendingAction(matchId, moveNumber, String.valueOf(chessPiece),
+                fromRow + "," + fromCol, toRow + "," + toCol, moveTime);
+        if (!queue.offer(action)) {
+            if (isFlushRequested.compareAndSet(false, true)) {
+                flusher.execute(this::flush);
+            }
+            boolean isQueued = false;
+            try {
+                isQueued = queue.offer(action, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!isQueued) {
+                log.error("Action log full, dropped {}", action);
+                return;
+            }
+        }
+        // Flush early once a whole batch is waiting
+        if (queue.size() >= batchSize && isFlushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flush);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${action-log.flush-millis}", initialDelayString = "${action-log.flush-millis}")
+    public synchronized void flush() {
+        isFlushRequested.set(false);
+        if (System.currentTimeMillis() < retryAt) {
+            return;
+        }
+        try {
+            // The failed batch first, then whatever is queued
+            while (!failed.isEmpty() || queue.drainTo(failed, batchSize) > 0) {
+                if (failures >= maxRetries) {
+                    writeEach(failed);
+                } else {
+                    transactionTemplate.executeWithoutResult(status -> actionRepository.saveAll(toEntities(failed)));
+                }
+                failed.clear();
+                failures = 0;
+            }
+            backoffMillis = 0;
+        } catch (Exception e) {
+            // Keep the batch and stop draining until the backoff passes
+            failures++;
+            backoffMillis = backoffMillis == 0 ? flushMillis : Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+            retryAt = System.currentTimeMillis() + backoffMillis;
+            log.error("Failed to write {} moves to the action log, attempt {} of {}, retrying in {} ms",
+                    failed.size(), failures, maxRetries, backoffMillis, e);
+        }
+    }
+
+    // Last attempt at a batch that keeps failing, a row that cannot be written is logged and skipped
+    private void writeEach(List<PendingAction> batch) {
+        for (PendingAction action : batch) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> actionRepository.saveAll(toEntities(List.of(action))));
+            } catch (Exception e) {
+                log.error("Skipped unwritable {}", action, e);
+            }
+        }
+    }
+
+    private List<ActionEntity> toEntities(List<PendingAction> batch) {
+        List<ActionEntity> entities = new ArrayList<>(batch.size());
+        for (PendingAction action : batch) {
+            entities.add(ActionEntity.builder()
+                    // Reference only, no select of the match
+                    .matchEntity(matchRepository.getReferenceById(action.matchId()))
+                    .moveNumber(action.moveNumber())
+                    .chessPiece(action.chessPiece())
+                    .fromPosition(action.fromPosition())
+                    .toPosition(action.toPosition())
+                    .moveTime(action.moveTime())
+                    .build());
+        }
+        return entities;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        // Write whatever is still queued before the context closes
+        retryAt = 0;
+        flush();
+        if (!failed.isEmpty() || !queue.isEmpty()) {
+            log.error("Action log closed with {} moves unwritten", failed.size() + queue.size());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.xiangqi.service.my_sql;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+// Claims due deadlines from Redis in batches and runs their handlers on a bounded pool, on every node.
+// A claim is a lease, a handler that throws or a node that dies leaves it to expire and be claimed again
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Service
+public class DeadlineService {
+    RedisDeadlineService redisDeadlineService;
+    MatchService matchService;
+    MatchContractService matchContractService;
+    int batchSize;
+    // Full queue runs handlers on the poller, which stops claiming until the pool catches up
+    ThreadPoolTaskExecutor workers;
+
+    public DeadlineService(RedisDeadlineService redisDeadlineService,
+                           MatchService matchService,
+                           MatchContractService matchContractService,
+                           @Qualifier("deadlineExecutor") ThreadPoolTaskExecutor workers,
+                           @Value("${deadline.batch-size}") int batchSize) {
+        this.redisDeadlineService = redisDeadlineService;
+        this.matchService = matchService;
+        this.matchContractService = matchContractService;
+        this.batchSize = batchSize;
+        this.workers = workers;
+    }
+
+    @Scheduled(fixedDelayString = "${deadline.poll-millis}", initialDelayString = "${deadline.poll-millis}")
+    public void poll() {
+        try {
+            // Keep claiming while full batches come back
+            List<String> members;
+            do {
+                members = redisDeadlineService.claimDueDeadlines(System.currentTimeMillis(), batchSize);
+                for (String member : members) {
+                    workers.execute(() -> handle(member));
+                }
+            } while (members.size() == batchSize);
+        } catch (Exception e) {
+            log.error("Failed to claim due deadlines", e);
+        }
+    }
+
+    private void handle(String member) {
+        try {
+            // match:{id}:{version} or matchContract:{id}
+            String[] parts = member.split(":");
+            switch (parts[0]) {
+                case "match" -> matchService.handleMatchTimeout(Long.valueOf(parts[1]), Long.valueOf(parts[2]));
+                case "matchContract" -> matchContractService.handleMatchContractExpiration(parts[1]);
+                default -> log.warn("Unknown deadline {}", member);
+            }
+            redisDeadlineService.completeDeadline(member);
+        } catch (Exception e) {
+            log.error("Failed to handle deadline {}", member, e);
+        }
+    }
+}
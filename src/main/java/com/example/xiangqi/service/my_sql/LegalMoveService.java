@@ -0,0 +1,70 @@
+package com.example.xiangqi.service.my_sql;
+
+import com.example.xiangqi.dto.model.Position;
+import com.example.xiangqi.dto.response.LegalMoveResponse;
+import com.example.xiangqi.entity.redis.MatchStateEntity;
+import com.example.xiangqi.util.Board;
+import com.example.xiangqi.util.MoveGenerator;
+import com.example.xiangqi.util.MoveValidator;
+import com.example.xiangqi.util.Zobrist;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Service
+public class LegalMoveService {
+    // Legal moves per position, keyed by Zobrist hash, least recently used evicted first
+    Map<Long, List<LegalMoveResponse>> cache;
+
+    public LegalMoveService(@Value("${match.legal-moves.cache-size}") int cacheSize) {
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<LegalMoveResponse>> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public List<LegalMoveResponse> getLegalMoves(MatchStateEntity msEntity) {
+        // Get side to move
+        boolean isRedToMove = msEntity.getTurn().equals(msEntity.getRedPlayer().getId());
+        // Get position key
+        Long positionHash = msEntity.getPositionHash() != null
+                ? msEntity.getPositionHash()
+                : Zobrist.hash(msEntity.getBoardState(), isRedToMove);
+
+        // Compute once per position, shared by players and spectators
+        List<LegalMoveResponse> legalMoves = cache.get(positionHash);
+        if (legalMoves == null) {
+            legalMoves = computeLegalMoves(msEntity.getBoardState(), isRedToMove);
+            cache.put(positionHash, legalMoves);
+        }
+        return legalMoves;
+    }
+
+    private static List<LegalMoveResponse> computeLegalMoves(Board board, boolean isRedToMove) {
+        // Generate legal moves
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveValidator.generateLegalMoves(board, isRedToMove, moves);
+
+        // Group destinations by moved piece, moves are generated piece by piece
+        List<LegalMoveResponse> legalMoves = new ArrayList<>();
+        List<Position> destinations = null;
+        int lastFrom = -1;
+        for (int i = 0; i < count; i++) {
+            int from = MoveGenerator.from(moves[i]);
+            int to = MoveGenerator.to(moves[i]);
+            if (from != lastFrom) {
+                destinations = new ArrayList<>();
+                legalMoves.add(new LegalMoveResponse(new Position(Board.row(from), Board.col(from)), destinations));
+                lastFrom = from;
+            }
+            destinations.add(new Position(Board.row(to), Board.col(to)));
+        }
+        return Collections.unmodifiableList(legalMoves);
+    }
+}
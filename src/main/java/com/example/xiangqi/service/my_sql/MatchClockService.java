@@ -0,0 +1,72 @@
+package com.example.xiangqi.service.my_sql;
+
+import com.example.xiangqi.util.TimingWheel;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Service
+public class MatchClockService {
+    MatchService matchService;
+    RedisMatchService redisMatchService;
+    TimingWheel timingWheel;
+    // Armed clock of each match on this node
+    Map<Long, TimingWheel.Timeout> clocks = new ConcurrentHashMap<>();
+
+    public MatchClockService(@Lazy MatchService matchService,
+                             RedisMatchService redisMatchService,
+                             @Qualifier("matchClockExecutor") ThreadPoolTaskExecutor executor,
+                             @Value("${match.clock.tick-millis}") long tickMillis,
+                             @Value("${match.clock.wheel-size}") int wheelSize) {
+        this.matchService = matchService;
+        this.redisMatchService = redisMatchService;
+        // Timeout handlers run on the executor, off the wheel thread
+        this.timingWheel = new TimingWheel("match-clock", tickMillis, wheelSize, executor);
+    }
+
+    // Replace the match's clock, the timeout ends the match unless the state moved past the given version
+    public void arm(Long matchId, Long version, long deadline) {
+        TimingWheel.Timeout timeout = timingWheel.schedule(deadline, () -> onTimeout(matchId, version, deadline));
+        TimingWheel.Timeout previous = clocks.put(matchId, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    public void disarm(Long matchId) {
+        TimingWheel.Timeout timeout = clocks.remove(matchId);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private void onTimeout(Long matchId, Long version, long deadline) {
+        // Forget the clock unless it was re-armed meanwhile
+        clocks.computeIfPresent(matchId, (id, timeout) -> timeout.getDeadline() == deadline ? null : timeout);
+        try {
+            // Take the deadline off the cluster-wide set, unless another node's poller already did
+            if (redisMatchService.claimMatchDeadline(matchId, version)) {
+                matchService.handleMatchTimeout(matchId, version);
+                redisMatchService.completeMatchDeadline(matchId, version);
+            }
+        } catch (Exception e) {
+            log.error("Failed to handle timeout of match {}", matchId, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timingWheel.close();
+    }
+}
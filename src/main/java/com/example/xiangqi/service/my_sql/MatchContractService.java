@@ -14,7 +14,7 @@ import lombok.experimental.FieldDefaults;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
-import java.util.UUID;
+import java.util.*;
 
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -38,11 +38,27 @@ public class MatchContractService {
         String matchContractId = UUID.randomUUID().toString();
         // Initial match contract
         redisMatchContractService.saveMatchContract(matchContractId, entity);
-        redisMatchContractService.saveMatchContractExpiration(matchContractId, MATCH_CONTRACT_EXPIRATION);
+        redisMatchContractService.saveMatchContractDeadline(matchContractId, System.currentTimeMillis() + MATCH_CONTRACT_EXPIRATION);
         // Return match contract ID
         return matchContractId;
     }
 
+    // Several contracts in one write each for the contracts and their deadlines, ids in request order
+    public List<String> createAll(List<MatchContractRequest> requests) {
+        Map<String, MatchContractEntity> entities = new LinkedHashMap<>();
+        for (MatchContractRequest request : requests) {
+            // Mapping
+            MatchContractEntity entity = matchContractMapper.toEntity(request);
+            // Set default accept status: false
+            entity.getPlayer1().setAcceptStatus(false);
+            entity.getPlayer2().setAcceptStatus(false);
+            entities.put(UUID.randomUUID().toString(), entity);
+        }
+        redisMatchContractService.saveMatchContracts(entities);
+        redisMatchContractService.saveMatchContractDeadlines(entities.keySet(), System.currentTimeMillis() + MATCH_CONTRACT_EXPIRATION);
+        return new ArrayList<>(entities.keySet());
+    }
+
     public void accept(ContractAcceptRequest request){
         // Get match contract
         MatchContractEntity mcEntity1 = redisMatchContractService.getMatchContract(request.getMatchContractId());
@@ -80,7 +96,7 @@ public class MatchContractService {
                 if (opponentAcceptStatus) {
                     // Delete match contract
                     redisMatchContractService.deleteMatchContract(request.getMatchContractId());
-                    redisMatchContractService.deleteMatchContractExpiration(request.getMatchContractId());
+                    redisMatchContractService.deleteMatchContractDeadline(request.getMatchContractId());
 
                     // Create match
                     Long matchId = matchService.createMatch(
@@ -99,10 +115,19 @@ public class MatchContractService {
     }
 
     public void handleMatchContractExpiration(String matchContractId) {
+        // Get the players before the contract is gone
+        MatchContractEntity mcEntity = redisMatchContractService.getMatchContract(matchContractId);
         // Delete match contract
         redisMatchContractService.deleteMatchContract(matchContractId);
         // Notify both players match contract timeout
         messagingTemplate.convertAndSend("/topic/match-contract/" + matchContractId,
                 new MessageObject("Match contract timeout.", null));
+        // Also on their queue topics, a player whose "Match found." was lost never subscribed to the contract
+        if (mcEntity != null) {
+            for (Long playerId : List.of(mcEntity.getPlayer1().getId(), mcEntity.getPlayer2().getId())) {
+                messagingTemplate.convertAndSend("/topic/queue/player/" + playerId,
+                        new MessageObject("Match contract timeout.", matchContractId));
+            }
+        }
     }
 }
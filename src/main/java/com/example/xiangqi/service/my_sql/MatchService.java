@@ -1,5 +1,6 @@
 package com.example.xiangqi.service.my_sql;
 
+import com.example.xiangqi.dto.model.Position;
 import com.example.xiangqi.dto.request.MoveRequest;
 import com.example.xiangqi.dto.request.ResignRequest;
 import com.example.xiangqi.dto.response.*;
@@ -13,19 +14,32 @@ import com.example.xiangqi.dto.response.PageResponse;
 import com.example.xiangqi.helper.MessageObject;
 import com.example.xiangqi.mapper.MatchMapper;
 import com.example.xiangqi.mapper.MatchStateMapper;
+import com.example.xiangqi.repository.GameArchive;
 import com.example.xiangqi.repository.MatchRepository;
 import com.example.xiangqi.repository.PlayerRepository;
+import com.example.xiangqi.util.Board;
 import com.example.xiangqi.util.BoardUtils;
+import com.example.xiangqi.util.FenCodec;
+import com.example.xiangqi.util.MoveGenerator;
+import com.example.xiangqi.util.MoveListCodec;
 import com.example.xiangqi.util.MoveValidator;
+import com.example.xiangqi.util.Zobrist;
 import jakarta.transaction.Transactional;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.*;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -37,14 +51,29 @@ import java.util.stream.Collectors;
 @Service
 public class MatchService {
 	MatchRepository matchRepository;
+	// Present when game-archive.enabled is set, a node-local read cache of the match rows' move lists
+	Optional<GameArchive> gameArchive;
 	SimpMessagingTemplate messagingTemplate;
 	PlayerRepository playerRepository;
 	RedisMatchService redisMatchService;
+	LegalMoveService legalMoveService;
+	MatchClockService matchClockService;
+	ActionLogService actionLogService;
+	RatingCacheService ratingCacheService;
 	MatchMapper matchMapper;
 
+	@NonFinal
+	@Value("${match.legal-moves.broadcast}")
+	boolean isLegalMovesBroadcast;
+
+	@NonFinal
+	@Value("${match.replay.snapshot-interval}")
+	int replaySnapshotInterval;
+
 	private static final long PLAYER_TOTAL_TIME_LEFT = 60_000 * 15;
 	private static final long PLAYER_TURN_TIME_EXPIRATION = 60_000 * 1;
 	private static final long PLAYER_TOTAL_TIME_EXPIRATION = 60_000 * 15;
+	private static final int MAX_CONFLICT_RETRIES = 3;
 	private final MatchStateMapper matchStateMapper;
 
 	public PageResponse<MatchResponse> getAllFinished(int page, int size, Long userId) {
@@ -75,11 +104,14 @@ public class MatchService {
 		// Save match
 		matchRepository.save(matchEntity);
 
+		// Initial board state, red moves first
+		Board initialBoardState = BoardUtils.getInitialBoardState();
+
 		// Initial match state
 		redisMatchService.saveMatchState(
 				matchEntity.getId(),
 				MatchStateEntity.builder()
-						.boardState(BoardUtils.getInitialBoardState())
+						.boardState(initialBoardState)
 						.redPlayer(MatchStatePlayerEntity.builder()
 								.id(firstIsRed ? player1.getId() : player2.getId())
 								.name(firstIsRed ? player1.getUsername() : player2.getUsername())
@@ -95,24 +127,84 @@ public class MatchService {
 						.turn(firstIsRed ? player1.getId() : player2.getId())
 						.lastMoveTime(Instant.now())
 						.mode(isRank ? "RANK" : "NORMAL")
+						.positionHash(Zobrist.hash(initialBoardState, true))
+						.positionHistory(new ArrayList<>())
 						.build());
-		// Initial match expiration
-		redisMatchService.saveMatchExpiration(matchEntity.getId(),
-				Math.min(PLAYER_TURN_TIME_EXPIRATION, PLAYER_TOTAL_TIME_EXPIRATION));
+		// Initial match deadline, on the cluster-wide deadlines and on this node's clock
+		long deadline = Instant.now().toEpochMilli() + Math.min(PLAYER_TURN_TIME_EXPIRATION, PLAYER_TOTAL_TIME_EXPIRATION);
+		redisMatchService.saveMatchDeadline(matchEntity.getId(), 0L, deadline);
+		matchClockService.arm(matchEntity.getId(), 0L, deadline);
 
 		return matchEntity.getId();
 	}
 
-	public MatchStateResponse getMatchStateById(Long matchId) {
+	public MatchStateResponse getMatchStateById(Long matchId, boolean isFen) {
 		// Get match state
 		MatchStateEntity entity = redisMatchService.getMatchState(matchId);
-		// Mapping & Return match state
-		return matchStateMapper.toResponse(entity);
+		// Mapping match state
+		MatchStateResponse response = matchStateMapper.toResponse(entity);
+		// Replace the board array with its FEN
+		if (isFen && response != null) {
+			response.setBoardFen(FenCodec.toFen(entity.getBoardState()));
+			response.setBoardState(null);
+		}
+		return response;
+	}
+
+	public ReplayResponse getReplayById(Long matchId, int ply) {
+		// Get the finished game, a slice of this node's archive or one match row
+		ByteBuffer moveList = getMoveList(matchId);
+		if (moveList == null)
+			throw new AppException(ErrorCode.REPLAY_NOT_FOUND);
+		int plyCount = MoveListCodec.plyCount(moveList);
+		if (ply < 0 || ply > plyCount)
+			throw new AppException(ErrorCode.INVALID_PLY);
+
+		// Rebuild the position from the nearest snapshot
+		int move = ply > 0 ? MoveListCodec.moveAt(moveList, ply) : -1;
+		return ReplayResponse.builder()
+				.ply(ply)
+				.plyCount(plyCount)
+				.from(ply > 0 ? toPosition(MoveGenerator.from(move)) : null)
+				.to(ply > 0 ? toPosition(MoveGenerator.to(move)) : null)
+				.boardState(MoveListCodec.positionAt(moveList, ply))
+				.build();
+	}
+
+	// This node's archive, for the analytics export
+	@PreAuthorize("hasRole('ADMIN')")
+	public GameArchive getGameArchive() {
+		return gameArchive.orElseThrow(() -> new AppException(ErrorCode.GAME_ARCHIVE_DISABLED));
+	}
+
+	private ByteBuffer getMoveList(Long matchId) {
+		GameArchive.ArchivedGame archivedGame = gameArchive.map(archive -> archive.find(matchId)).orElse(null);
+		if (archivedGame != null)
+			return archivedGame.moveList();
+		// Ended on another node, or before the archive was enabled
+		MatchEntity matchEntity = matchRepository.findById(matchId)
+				.orElseThrow(() -> new AppException(ErrorCode.MATCH_NOT_FOUND));
+		return matchEntity.getMoveList() != null ? ByteBuffer.wrap(matchEntity.getMoveList()) : null;
+	}
+
+	private static Position toPosition(int square) {
+		return new Position(Board.row(square), Board.col(square));
+	}
+
+	public List<LegalMoveResponse> getLegalMovesById(Long matchId) {
+		// Get match state
+		MatchStateEntity msEntity = redisMatchService.getMatchState(matchId);
+		if (msEntity == null)
+			throw new AppException(ErrorCode.MATCH_NOT_FOUND);
+		// Return cached legal moves of the player to move
+		return legalMoveService.getLegalMoves(msEntity);
 	}
 
 	public void move(MoveRequest moveRequest) {
 		// Get match state
 		MatchStateEntity msEntity = redisMatchService.getMatchState(moveRequest.getMatchId());
+		if (msEntity == null)
+			throw new AppException(ErrorCode.MATCH_NOT_FOUND);
 
 		// Check if the piece belongs to the current player
 		if (!isCorrectTurn(msEntity, moveRequest))
@@ -121,17 +213,32 @@ public class MatchService {
 		if (!MoveValidator.isValidMove(msEntity.getBoardState(), moveRequest))
 			throw new AppException(ErrorCode.INVALID_MOVE);
 
-		// Apply move & update Redis
+		// Apply move & update Redis, a concurrent change of the state rejects the move
 		applyMove(moveRequest.getMatchId(), msEntity, moveRequest);
 
+		// Log the move for replays, written to MySQL in the background
+		actionLogService.record(moveRequest.getMatchId(), msEntity.getVersion().intValue(),
+				Board.toChar(msEntity.getBoardState().get(moveRequest.getTo().getRow(), moveRequest.getTo().getCol())),
+				moveRequest.getFrom().getRow(), moveRequest.getFrom().getCol(),
+				moveRequest.getTo().getRow(), moveRequest.getTo().getCol(),
+				msEntity.getLastMoveTime());
+
+		// Get opponent's legal moves, shared with the legal-moves endpoint
+		List<LegalMoveResponse> legalMoves = isLegalMovesBroadcast
+				? legalMoveService.getLegalMoves(msEntity)
+				: null;
+
 		// Notify players via WebSocket
 		messagingTemplate.convertAndSend("/topic/match/" + moveRequest.getMatchId(),
-				new MessageObject("Piece moved.", new MoveResponse(moveRequest.getFrom(), moveRequest.getTo())));
+				new MessageObject("Piece moved.", new MoveResponse(moveRequest.getFrom(), moveRequest.getTo(), legalMoves, msEntity.getVersion())));
 
 		// Check if opponent has legal moves
 		boolean opponentIsRed = msEntity.getRedPlayer().getId().equals(msEntity.getTurn());
-		if (!MoveValidator.hasLegalMoves(msEntity.getBoardState(), opponentIsRed))
-			endMatch(moveRequest.getMatchId(), opponentIsRed
+		boolean opponentHasLegalMoves = legalMoves != null
+				? !legalMoves.isEmpty()
+				: MoveValidator.hasLegalMoves(msEntity.getBoardState(), opponentIsRed);
+		if (!opponentHasLegalMoves)
+			endMatch(moveRequest.getMatchId(), msEntity, opponentIsRed
 					? msEntity.getRedPlayer().getId()
 					: msEntity.getBlackPlayer().getId());
 	}
@@ -142,41 +249,58 @@ public class MatchService {
 		Long blackPlayerId = msEntity.getBlackPlayer().getId();
 		Long turn = msEntity.getTurn();
 		// Get moved piece
-		String movedPiece = msEntity.getBoardState()[request.getFrom().getRow()][request.getFrom().getCol()];
-
-		return (Character.isUpperCase(movedPiece.charAt(0)) && request.getMoverId().equals(redPlayerId) && request.getMoverId().equals(turn)) ||
-				(Character.isLowerCase(movedPiece.charAt(0)) && request.getMoverId().equals(blackPlayerId) && request.getMoverId().equals(turn));
+		int fromRow = request.getFrom().getRow();
+		int fromCol = request.getFrom().getCol();
+		if (!Board.isOnBoard(fromRow, fromCol))
+			return false;
+		byte movedPiece = msEntity.getBoardState().get(fromRow, fromCol);
+
+		return (Board.isRed(movedPiece) && request.getMoverId().equals(redPlayerId) && request.getMoverId().equals(turn)) ||
+				(Board.isBlack(movedPiece) && request.getMoverId().equals(blackPlayerId) && request.getMoverId().equals(turn));
 	}
 
 	public void resign(ResignRequest resignRequest) {
-		// Get player ID
-		MatchStateEntity msEntity = redisMatchService.getMatchState(resignRequest.getMatchId());
-		Long redPlayerId = msEntity.getRedPlayer().getId();
-		Long blackPlayerId = msEntity.getBlackPlayer().getId();
-
-		if (!resignRequest.getSurrenderId().equals(redPlayerId) && !resignRequest.getSurrenderId().equals(blackPlayerId))
-			throw new AppException(ErrorCode.UNAUTHORIZED);
-
-		endMatch(resignRequest.getMatchId(), resignRequest.getSurrenderId().equals(redPlayerId) ? redPlayerId : blackPlayerId);
+		// Resigning stays valid after a concurrent move, retry on the fresh state
+		for (int attempt = 1; ; attempt++) {
+			// Get player ID
+			MatchStateEntity msEntity = redisMatchService.getMatchState(resignRequest.getMatchId());
+			if (msEntity == null)
+				throw new AppException(ErrorCode.MATCH_NOT_FOUND);
+			Long redPlayerId = msEntity.getRedPlayer().getId();
+			Long blackPlayerId = msEntity.getBlackPlayer().getId();
+
+			if (!resignRequest.getSurrenderId().equals(redPlayerId) && !resignRequest.getSurrenderId().equals(blackPlayerId))
+				throw new AppException(ErrorCode.UNAUTHORIZED);
+
+			if (endMatch(resignRequest.getMatchId(), msEntity, resignRequest.getSurrenderId().equals(redPlayerId) ? redPlayerId : blackPlayerId))
+				return;
+			if (attempt == MAX_CONFLICT_RETRIES)
+				throw new AppException(ErrorCode.MATCH_STATE_CONFLICT);
+		}
 	}
 
 	private void applyMove(Long matchId, MatchStateEntity msEntity, MoveRequest moveRequest) {
 		// Get match state
-		String[][] boardState = msEntity.getBoardState();
+		Board boardState = msEntity.getBoardState();
 		MatchStatePlayerEntity redPlayer = msEntity.getRedPlayer();
 		MatchStatePlayerEntity blackPlayer = msEntity.getBlackPlayer();
 		Instant lastMoveTime = msEntity.getLastMoveTime();
 		// Get move request detail
-		int fromRow = moveRequest.getFrom().getRow();
-		int fromCol = moveRequest.getFrom().getCol();
-		int toRow = moveRequest.getTo().getRow();
-		int toCol = moveRequest.getTo().getCol();
+		int from = Board.square(moveRequest.getFrom().getRow(), moveRequest.getFrom().getCol());
+		int to = Board.square(moveRequest.getTo().getRow(), moveRequest.getTo().getCol());
 		// Get user's faction
 		boolean isRedPlayer = msEntity.getTurn().equals(redPlayer.getId());
 
+		// Keep the previous position for repetition checks
+		long positionHash = msEntity.getPositionHash() != null
+				? msEntity.getPositionHash()
+				: Zobrist.hash(boardState, isRedPlayer);
+
 		// Apply the move (update board state)
-		boardState[toRow][toCol] = boardState[fromRow][fromCol]; // Move piece
-		boardState[fromRow][fromCol] = ""; // Clear old position
+		byte movedPiece = boardState.get(from);
+		byte capturedPiece = boardState.makeMove(from, to);
+		// Update position hash
+		msEntity.setPositionHash(Zobrist.update(positionHash, movedPiece, from, to, capturedPiece));
 		// Update turns
 		Long nextTurn = isRedPlayer ? blackPlayer.getId() : redPlayer.getId();
 		msEntity.setTurn(nextTurn);
@@ -193,28 +317,55 @@ public class MatchService {
 		// Update Last Move Time
 		msEntity.setLastMoveTime(Instant.now());
 
-		// Update match state
-		redisMatchService.saveMatchState(matchId, msEntity);
-
 		// Get opponent player's total time-left
 		Long opponentPlayerTimeLeft = isRedPlayer
 				? blackPlayer.getTotalTimeLeft()
 				: redPlayer.getTotalTimeLeft();
 
-		// Set new match expiration
-		redisMatchService.saveMatchExpiration(matchId, Math.min(PLAYER_TURN_TIME_EXPIRATION, opponentPlayerTimeLeft));
+		// Commit the changed fields & new match deadline, unless another request changed the state first
+		long deadline = msEntity.getLastMoveTime().toEpochMilli() + Math.min(PLAYER_TURN_TIME_EXPIRATION, opponentPlayerTimeLeft);
+		if (!redisMatchService.commitMove(matchId, msEntity, from, to, positionHash, moveRequest.getMoverId(), deadline))
+			throw new AppException(ErrorCode.MATCH_STATE_CONFLICT);
+
+		// Re-arm the opponent's clock
+		matchClockService.arm(matchId, msEntity.getVersion(), deadline);
 	}
 
+	// Called by whichever node leased the deadline, again after an expired lease, so it must stay safe to repeat
+	public void handleMatchTimeout(Long matchId, Long version) {
+		// Get match state, already gone when the match ended another way
+		MatchStateEntity entity = redisMatchService.getMatchState(matchId);
+		if (entity == null)
+			return;
+		// A move committed since the clock was armed, possibly on another node
+		if (!entity.getVersion().equals(version))
+			return;
+		// End match, a losing race with a move or resign leaves it to them
+		endMatch(matchId, entity, entity.getTurn());
+	}
+
+	// Clock of a match started before the deadlines sorted set, fired by the Redis expiration key
 	public void handleMatchExpiration(Long matchId) {
-		// Get match state
+		// Get match state, already gone when the match ended another way
 		MatchStateEntity entity = redisMatchService.getMatchState(matchId);
-		// End match
-		endMatch(matchId, entity.getTurn());
+		if (entity == null)
+			return;
+		// A move committed since moved the clock to the deadlines, which now own it
+		if (redisMatchService.hasMatchDeadline(matchId, entity.getVersion()))
+			return;
+		// End match, a losing race with a move or resign leaves it to them
+		endMatch(matchId, entity, entity.getTurn());
 	}
 
-	private void endMatch(Long matchId, Long loserId) {
-		// Get match state
-		MatchStateEntity msEntity = redisMatchService.getMatchState(matchId);
+	// End the match if its state is still at the version the caller read, return false otherwise
+	private boolean endMatch(Long matchId, MatchStateEntity msEntity, Long loserId) {
+		// Read the moves before finishing removes them, they are exactly msEntity's moves once the finish succeeds
+		int[] moves = redisMatchService.getMoves(matchId);
+		// Claim the end of the match, only one caller gets past this
+		if (!redisMatchService.finishMatch(matchId, msEntity.getVersion()))
+			return false;
+		matchClockService.disarm(matchId);
+
 		// Get PlayerId
 		Long redPlayerId = msEntity.getRedPlayer().getId();
 		Long blackPlayerId = msEntity.getBlackPlayer().getId();
@@ -227,6 +378,18 @@ public class MatchService {
 				.orElseThrow(() -> new AppException(ErrorCode.MATCH_NOT_FOUND));
 		matchEntity.setResult(isRedLose ? "Black Player Win" : "Red Player Win"); // Opponent wins
 		matchEntity.setEndTime(Instant.now());
+		// Keep the game for replays, unless it began before moves were listed.
+		// A state migrated mid-game restarts its version at 0, so the moves must also replay to the final board
+		if (msEntity.getVersion() != null && moves.length == msEntity.getVersion()) {
+			byte[] moveList = MoveListCodec.encode(BoardUtils.getInitialBoardState(), moves, replaySnapshotInterval);
+			boolean isRedToMove = moves.length % 2 == 0;
+			if (Zobrist.hash(MoveListCodec.positionAt(ByteBuffer.wrap(moveList), moves.length), isRedToMove)
+					== Zobrist.hash(msEntity.getBoardState(), isRedToMove)) {
+				// The match row is the source of truth, the archive only caches it on this node
+				matchEntity.setMoveList(moveList);
+				archiveGame(matchEntity, redPlayerId, blackPlayerId, moveList);
+			}
+		}
 		matchRepository.save(matchEntity);
 
 		// Get mode
@@ -243,18 +406,43 @@ public class MatchService {
 					.orElseThrow(() -> new AppException(ErrorCode.USER_NOT_FOUND));
 			blackPlayerEntity.setRating(isRedLose ? blackPlayerEntity.getRating() + 10 : blackPlayerEntity.getRating() - 10);
 			playerRepository.save(blackPlayerEntity);
+			// Cached ratings are stale once this commits
+			ratingCacheService.evict(redPlayerId, blackPlayerId);
 		}
 
-		// Delete match state
-		redisMatchService.deleteMatchState(matchEntity.getId());
-		redisMatchService.deleteMatchExpiration(matchEntity.getId());
-
 		messagingTemplate.convertAndSend("/topic/match/" + matchId,
 				new MessageObject(
 						"Match finished.",
 						new MatchResultResponse(
 								isRedLose ? "black" : "red",
 								isRank ? +10 : 0,
-								isRank ? -10 : 0)));
+								isRank ? -10 : 0,
+								msEntity.getVersion())));
+		return true;
+	}
+
+	// Append once the match row commits, a failed append only costs replays a read of the row
+	private void archiveGame(MatchEntity matchEntity, Long redPlayerId, Long blackPlayerId, byte[] moveList) {
+		if (gameArchive.isEmpty())
+			return;
+		GameArchive.ArchivedGame game = new GameArchive.ArchivedGame(matchEntity.getId(), redPlayerId, blackPlayerId,
+				matchEntity.getResult(), matchEntity.getStartTime(), matchEntity.getEndTime(), ByteBuffer.wrap(moveList));
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					appendArchivedGame(game);
+				}
+			});
+		else
+			appendArchivedGame(game);
+	}
+
+	private void appendArchivedGame(GameArchive.ArchivedGame game) {
+		try {
+			gameArchive.get().append(game);
+		} catch (IOException e) {
+			log.error("Failed to archive match {}", game.matchId(), e);
+		}
 	}
 }
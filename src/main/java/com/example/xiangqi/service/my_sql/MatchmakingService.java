@@ -0,0 +1,147 @@
+package com.example.xiangqi.service.my_sql;
+
+import com.example.xiangqi.dto.request.ContractPlayerRequest;
+import com.example.xiangqi.dto.request.MatchContractRequest;
+import com.example.xiangqi.helper.MessageObject;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Pairs the whole waiting pool once per tick. Players are sorted by rating and only neighbours are paired,
+// two players fit when their gap is within the wider of their windows, which grow with waiting time.
+// Every node ticks, the claim in Redis keeps a player in one pair only
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Service
+public class MatchmakingService {
+    RedisQueueService redisQueueService;
+    MatchContractService matchContractService;
+    SimpMessagingTemplate messagingTemplate;
+    int baseWindow;
+    int widenPerSecond;
+    int maxWindow;
+
+    public MatchmakingService(RedisQueueService redisQueueService,
+                              MatchContractService matchContractService,
+                              SimpMessagingTemplate messagingTemplate,
+                              @Value("${matchmaking.base-window}") int baseWindow,
+                              @Value("${matchmaking.widen-per-second}") int widenPerSecond,
+                              @Value("${matchmaking.max-window}") int maxWindow) {
+        this.redisQueueService = redisQueueService;
+        this.matchContractService = matchContractService;
+        this.messagingTemplate = messagingTemplate;
+        this.baseWindow = baseWindow;
+        this.widenPerSecond = widenPerSecond;
+        this.maxWindow = maxWindow;
+    }
+
+    @Scheduled(fixedDelayString = "${matchmaking.tick-millis}", initialDelayString = "${matchmaking.tick-millis}")
+    public void tick() {
+        try {
+            List<RedisQueueService.QueuedPlayer> pool = redisQueueService.getQueuedPlayers();
+            if (pool.size() < 2) {
+                return;
+            }
+            List<Long> pairs = pair(pool, System.currentTimeMillis());
+            if (pairs.isEmpty()) {
+                return;
+            }
+
+            // Players who left since the snapshot lose their pair, the partner waits for the next tick
+            List<Long> claimed = redisQueueService.claimPairs(pairs);
+            List<MatchContractRequest> requests = new ArrayList<>();
+            for (int i = 0; i + 1 < claimed.size(); i += 2) {
+                requests.add(MatchContractRequest.builder()
+                        .player1(new ContractPlayerRequest(claimed.get(i)))
+                        .player2(new ContractPlayerRequest(claimed.get(i + 1)))
+                        .build());
+            }
+            if (requests.isEmpty()) {
+                return;
+            }
+            List<String> matchContractIds;
+            try {
+                matchContractIds = matchContractService.createAll(requests);
+            } catch (Exception e) {
+                // Claimed players are off the queue, put them back as they were
+                requeue(pool, claimed);
+                throw e;
+            }
+
+            // Notify players via WebSocket, only once their contracts exist.
+            // A failed send is not re-queued, the contract's expiry also tells both players on their queue topics
+            for (int i = 0; i < matchContractIds.size(); i++) {
+                for (Long playerId : List.of(claimed.get(2 * i), claimed.get(2 * i + 1))) {
+                    try {
+                        messagingTemplate.convertAndSend("/topic/queue/player/" + playerId,
+                                new MessageObject("Match found.", matchContractIds.get(i)));
+                    } catch (Exception e) {
+                        log.error("Failed to notify player {} of match contract {}", playerId, matchContractIds.get(i), e);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to run matchmaking", e);
+        }
+    }
+
+    private void requeue(List<RedisQueueService.QueuedPlayer> pool, List<Long> claimed) {
+        Set<Long> claimedIds = new HashSet<>(claimed);
+        redisQueueService.requeue(pool.stream().filter(player -> claimedIds.contains(player.id())).toList());
+    }
+
+    // Pairs as consecutive ids. Over the pool sorted by rating, pick the most pairs of neighbours,
+    // then the smallest total rating gap among those
+    private List<Long> pair(List<RedisQueueService.QueuedPlayer> pool, long now) {
+        int size = pool.size();
+        // Best result over the first k players
+        int[] pairCount = new int[size + 1];
+        long[] totalGap = new long[size + 1];
+        boolean[] isPaired = new boolean[size + 1];
+        for (int k = 2; k <= size; k++) {
+            pairCount[k] = pairCount[k - 1];
+            totalGap[k] = totalGap[k - 1];
+            RedisQueueService.QueuedPlayer lower = pool.get(k - 2);
+            RedisQueueService.QueuedPlayer higher = pool.get(k - 1);
+            int gap = higher.rating() - lower.rating();
+            if (gap > Math.max(window(lower, now), window(higher, now))) {
+                continue;
+            }
+            int count = pairCount[k - 2] + 1;
+            long total = totalGap[k - 2] + gap;
+            if (count > pairCount[k] || (count == pairCount[k] && total < totalGap[k])) {
+                pairCount[k] = count;
+                totalGap[k] = total;
+                isPaired[k] = true;
+            }
+        }
+
+        List<Long> pairs = new ArrayList<>(pairCount[size] * 2);
+        for (int k = size; k >= 2; ) {
+            if (isPaired[k]) {
+                pairs.add(pool.get(k - 2).id());
+                pairs.add(pool.get(k - 1).id());
+                k -= 2;
+            } else {
+                k--;
+            }
+        }
+        return pairs;
+    }
+
+    // Allowed rating gap, widening with each second waited
+    private int window(RedisQueueService.QueuedPlayer player, long now) {
+        // Unknown join time counts as just joined
+        long waitedSeconds = player.joinTime() > 0 ? Math.max(0, now - player.joinTime()) / 1000 : 0;
+        return (int) Math.min(maxWindow, baseWindow + waitedSeconds * widenPerSecond);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.xiangqi.service.my_sql;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Near-cache of player ratings on each node. A rating change is published on a Redis channel
+// and every node, this one included, drops its copy. Entries are also reloaded after a TTL,
+// which bounds staleness when an eviction message is lost
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Service
+public class RatingCacheService {
+    PlayerService playerService;
+    RedisTemplate<String, String> redisStringTemplate;
+    long ttlMillis;
+    // Ratings by player id, least recently used evicted first
+    Map<Long, CachedRating> cache;
+    // Bumped on every eviction, a load that overlapped one is not cached
+    AtomicLong evictions = new AtomicLong();
+
+    // Channel
+    public static final String RATING_EVICTION_CHANNEL = "rating:evicted";
+
+    private record CachedRating(Integer rating, long loadedAt) {
+    }
+
+    public RatingCacheService(PlayerService playerService,
+                              RedisTemplate<String, String> redisStringTemplate,
+                              @Value("${rating-cache.size}") int cacheSize,
+                              @Value("${rating-cache.ttl-millis}") long ttlMillis) {
+        this.playerService = playerService;
+        this.redisStringTemplate = redisStringTemplate;
+        this.ttlMillis = ttlMillis;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedRating> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public Integer getRating(Long playerId) {
+        CachedRating cached = cache.get(playerId);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.loadedAt() < ttlMillis) {
+            return cached.rating();
+        }
+        long evictionsBefore = evictions.get();
+        Integer rating = playerService.getRatingById(playerId);
+        if (evictions.get() == evictionsBefore) {
+            cache.put(playerId, new CachedRating(rating, now));
+        }
+        return rating;
+    }
+
+    // Drop the players' ratings on every node, after the current transaction commits
+    public void evict(Long... playerIds) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishEviction(playerIds);
+                }
+            });
+        } else {
+            publishEviction(playerIds);
+        }
+    }
+
+    // Called for each message on the eviction channel
+    public void evictLocal(Long playerId) {
+        evictions.incrementAndGet();
+        cache.remove(playerId);
+    }
+
+    private void publishEviction(Long... playerIds) {
+        for (Long playerId : playerIds) {
+            evictLocal(playerId);
+            try {
+                redisStringTemplate.convertAndSend(RATING_EVICTION_CHANNEL, String.valueOf(playerId));
+            } catch (Exception e) {
+                log.error("Failed to publish rating eviction of player {}", playerId, e);
+            }
+        }
+    }
+}
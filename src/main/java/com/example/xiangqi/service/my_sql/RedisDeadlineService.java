@@ -0,0 +1,105 @@
+package com.example.xiangqi.service.my_sql;
+
+import jakarta.transaction.Transactional;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
+@Transactional
+@Service
+public class RedisDeadlineService {
+    RedisTemplate<String, String> redisStringTemplate;
+
+    // Claimed deadlines go back to the set when not completed within the lease
+    @NonFinal
+    @Value("${deadline.lease-millis}")
+    long leaseMillis;
+
+    // Every pending deadline of the cluster, scored by epoch millis
+    public static final String DEADLINES_KEY = "deadlines:";
+    // Claimed deadlines whose handler has not returned yet, scored by lease expiry
+    public static final String DEADLINES_PROCESSING_KEY = "deadlines:processing:";
+    private static final List<String> DEADLINE_KEYS = List.of(DEADLINES_KEY, DEADLINES_PROCESSING_KEY);
+
+    // Members
+    public static final String MATCH_DEADLINE_PREFIX = "match:%d:";
+    public static final String MATCH_CONTRACT_DEADLINE = "matchContract:%s";
+
+    // Lease due members, each goes to one caller at a time, and put back expired leases
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM_DEADLINES_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/claim-deadlines.lua"), List.class);
+    private static final RedisScript<Long> CLAIM_DEADLINE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/claim-deadline.lua"), Long.class);
+
+    // Member of a match clock, one per state version
+    public static String matchDeadline(Long matchId, Long version) {
+        return String.format(MATCH_DEADLINE_PREFIX, matchId) + version;
+    }
+
+    public static String matchContractDeadline(String matchContractId) {
+        return String.format(MATCH_CONTRACT_DEADLINE, matchContractId);
+    }
+
+    // Save
+    public void saveDeadline(String member, long deadline) {
+        redisStringTemplate.opsForZSet().add(DEADLINES_KEY, member, deadline);
+    }
+
+    public void saveDeadlines(Collection<String> members, long deadline) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        for (String member : members) {
+            tuples.add(ZSetOperations.TypedTuple.of(member, (double) deadline));
+        }
+        redisStringTemplate.opsForZSet().add(DEADLINES_KEY, tuples);
+    }
+
+    // Get
+    // Pending or leased
+    public boolean hasDeadline(String member) {
+        return redisStringTemplate.opsForZSet().score(DEADLINES_KEY, member) != null
+                || redisStringTemplate.opsForZSet().score(DEADLINES_PROCESSING_KEY, member) != null;
+    }
+
+    // Claim, every claimed member must be completed once its handler returns
+    @SuppressWarnings("unchecked")
+    public List<String> claimDueDeadlines(long now, int batchSize) {
+        List<String> members = redisStringTemplate.execute(CLAIM_DEADLINES_SCRIPT, DEADLINE_KEYS,
+                String.valueOf(now), String.valueOf(batchSize), String.valueOf(now + leaseMillis));
+        return members != null ? members : List.of();
+    }
+
+    // True for the one caller that leased the member
+    public boolean claimDeadline(String member) {
+        Long claimed = redisStringTemplate.execute(CLAIM_DEADLINE_SCRIPT, DEADLINE_KEYS,
+                member, String.valueOf(System.currentTimeMillis() + leaseMillis));
+        return claimed != null && claimed == 1;
+    }
+
+    // Release the lease once the handler is done
+    public void completeDeadline(String member) {
+        redisStringTemplate.opsForZSet().remove(DEADLINES_PROCESSING_KEY, member);
+    }
+
+    // Delete
+    public void deleteDeadline(String member) {
+        redisStringTemplate.opsForZSet().remove(DEADLINES_KEY, member);
+        redisStringTemplate.opsForZSet().remove(DEADLINES_PROCESSING_KEY, member);
+    }
+}
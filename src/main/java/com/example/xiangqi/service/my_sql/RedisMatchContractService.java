@@ -9,6 +9,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @RequiredArgsConstructor
@@ -18,11 +21,10 @@ import java.util.concurrent.TimeUnit;
 @Service
 public class RedisMatchContractService {
     RedisTemplate<String, MatchContractEntity> mcRedisTemplate;
-    RedisTemplate<String, Long> longRedisTemplate;
+    RedisDeadlineService redisDeadlineService;
 
     // Key
     private static final String MATCH_CONTRACT_KEY = "matchContract:%s:";
-    private static final String MATCH_CONTRACT_EXPIRATION_KEY = "matchContract:%s:expiration:";
 
     // Lock key
     private static final String MATCH_CONTRACT_LOCK_KEY = "lock:matchContract:%s:";
@@ -37,9 +39,18 @@ public class RedisMatchContractService {
         mcRedisTemplate.opsForValue().set(key, entity);
     }
 
-    public void saveMatchContractExpiration(String matchContractId, Long expirationTime) {
-        String key = String.format(MATCH_CONTRACT_EXPIRATION_KEY, matchContractId);
-        longRedisTemplate.opsForValue().set(key, expirationTime, expirationTime, TimeUnit.MILLISECONDS);
+    public void saveMatchContracts(Map<String, MatchContractEntity> entities) {
+        Map<String, MatchContractEntity> values = new HashMap<>();
+        entities.forEach((matchContractId, entity) -> values.put(String.format(MATCH_CONTRACT_KEY, matchContractId), entity));
+        mcRedisTemplate.opsForValue().multiSet(values);
+    }
+
+    public void saveMatchContractDeadline(String matchContractId, long deadline) {
+        redisDeadlineService.saveDeadline(RedisDeadlineService.matchContractDeadline(matchContractId), deadline);
+    }
+
+    public void saveMatchContractDeadlines(Collection<String> matchContractIds, long deadline) {
+        redisDeadlineService.saveDeadlines(matchContractIds.stream().map(RedisDeadlineService::matchContractDeadline).toList(), deadline);
     }
 
     // Get
@@ -52,8 +63,8 @@ public class RedisMatchContractService {
         mcRedisTemplate.delete(String.format(MATCH_CONTRACT_KEY, matchContractId));
     }
 
-    public void deleteMatchContractExpiration(String matchContractId) {
-        mcRedisTemplate.delete(String.format(MATCH_CONTRACT_EXPIRATION_KEY, matchContractId));
+    public void deleteMatchContractDeadline(String matchContractId) {
+        redisDeadlineService.deleteDeadline(RedisDeadlineService.matchContractDeadline(matchContractId));
     }
 
     // Acquire lock
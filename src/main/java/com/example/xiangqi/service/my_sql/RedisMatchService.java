@@ -1,15 +1,21 @@
 package com.example.xiangqi.service.my_sql;
 
 import com.example.xiangqi.entity.redis.MatchStateEntity;
+import com.example.xiangqi.entity.redis.MatchStatePlayerEntity;
+import com.example.xiangqi.util.Board;
+import com.example.xiangqi.util.MoveGenerator;
 import jakarta.transaction.Transactional;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.TimeUnit;
+import java.time.Instant;
+import java.util.*;
 
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -18,31 +24,226 @@ import java.util.concurrent.TimeUnit;
 @Service
 public class RedisMatchService {
     RedisTemplate<String, MatchStateEntity> msRedisTemplate;
-    RedisTemplate<String, Long> longRedisTemplate;
+    RedisTemplate<String, String> redisStringTemplate;
+    RedisDeadlineService redisDeadlineService;
 
+    // Whole state as one value, only read to migrate matches started before the hash layout
     private static final String MATCH_STATE_KEY = "match:%d:state:";
+    // State as a hash, one field per square and per scalar
+    private static final String MATCH_STATE_HASH_KEY = "match:%d:fields:";
+    private static final String MATCH_POSITION_HISTORY_KEY = "match:%d:history:";
+    // Moves in play order, packed as from << 8 | to, written to MySQL when the match ends
+    private static final String MATCH_MOVES_KEY = "match:%d:moves:";
+    // Clock of matches started before the deadlines sorted set, removed when the match ends
     private static final String MATCH_STATE_EXPIRATION_KEY = "match:%d:expiration:";
 
+    // Hash fields
+    private static final String RED_PLAYER_ID = "redPlayer.id";
+    private static final String RED_PLAYER_NAME = "redPlayer.name";
+    private static final String RED_PLAYER_RATING = "redPlayer.rating";
+    private static final String RED_PLAYER_TIME_LEFT = "redPlayer.totalTimeLeft";
+    private static final String BLACK_PLAYER_ID = "blackPlayer.id";
+    private static final String BLACK_PLAYER_NAME = "blackPlayer.name";
+    private static final String BLACK_PLAYER_RATING = "blackPlayer.rating";
+    private static final String BLACK_PLAYER_TIME_LEFT = "blackPlayer.totalTimeLeft";
+    private static final String TURN = "turn";
+    private static final String LAST_MOVE_TIME = "lastMoveTime";
+    private static final String MODE = "mode";
+    private static final String POSITION_HASH = "positionHash";
+    private static final String VERSION = "version";
+    private static final String[] SQUARES = new String[Board.SIZE];
+
+    // Check turn and version, write the move, append the history and the move list and move the clock deadline
+    private static final RedisScript<Long> COMMIT_MOVE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/commit-move.lua"), Long.class);
+    // Check version, remove the state
+    private static final RedisScript<Long> FINISH_MATCH_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/finish-match.lua"), Long.class);
+
+    static {
+        for (int square = 0; square < Board.SIZE; square++) {
+            SQUARES[square] = "board:" + square;
+        }
+    }
+
     // Save
     public void saveMatchState(Long matchId, MatchStateEntity entity) {
-        msRedisTemplate.opsForValue().set(String.format(MATCH_STATE_KEY, matchId), entity);
+        redisStringTemplate.opsForHash().putAll(String.format(MATCH_STATE_HASH_KEY, matchId), toFields(entity));
+        // Position history lives in its own list, appended to move by move
+        String historyKey = String.format(MATCH_POSITION_HISTORY_KEY, matchId);
+        redisStringTemplate.delete(historyKey);
+        if (entity.getPositionHistory() != null && !entity.getPositionHistory().isEmpty()) {
+            redisStringTemplate.opsForList().rightPushAll(historyKey,
+                    entity.getPositionHistory().stream().map(String::valueOf).toList());
+        }
+    }
+
+    // Write only the fields a move changes and move the clock deadline in one atomic call, entity holds the state after the move.
+    // Fails when the turn or the version changed since the entity was read
+    public boolean commitMove(Long matchId, MatchStateEntity entity, int from, int to,
+                              long previousPositionHash, Long expectedTurn, long deadline) {
+        Long version = redisStringTemplate.execute(COMMIT_MOVE_SCRIPT,
+                List.of(String.format(MATCH_STATE_HASH_KEY, matchId),
+                        String.format(MATCH_POSITION_HISTORY_KEY, matchId),
+                        RedisDeadlineService.DEADLINES_KEY,
+                        String.format(MATCH_MOVES_KEY, matchId)),
+                (Object[]) commitMoveArgs(matchId, entity, from, to, previousPositionHash, expectedTurn, deadline));
+
+        if (version == null || version <= 0) {
+            log.warn("Move commit rejected for match {}: {}", matchId, version == null || version < 0 ? "not found" : "conflict");
+            return false;
+        }
+        entity.setVersion(version);
+        return true;
+    }
+
+    // Arguments of the commit-move script, the whole per-move write. Also measured by the benchmark
+    public static String[] commitMoveArgs(Long matchId, MatchStateEntity entity, int from, int to,
+                                          long previousPositionHash, Long expectedTurn, long deadline) {
+        boolean isRedMover = !entity.getTurn().equals(entity.getRedPlayer().getId());
+        MatchStatePlayerEntity mover = isRedMover ? entity.getRedPlayer() : entity.getBlackPlayer();
+        long expectedVersion = entity.getVersion() != null ? entity.getVersion() : 0;
+        return new String[]{
+                String.valueOf(expectedTurn),
+                String.valueOf(expectedVersion),
+                String.valueOf(previousPositionHash),
+                String.valueOf(deadline),
+                String.format(RedisDeadlineService.MATCH_DEADLINE_PREFIX, matchId),
+                String.valueOf(MoveGenerator.encode(from, to)),
+                SQUARES[from], toField(entity.getBoardState().get(from)),
+                SQUARES[to], toField(entity.getBoardState().get(to)),
+                TURN, String.valueOf(entity.getTurn()),
+                isRedMover ? RED_PLAYER_TIME_LEFT : BLACK_PLAYER_TIME_LEFT, String.valueOf(mover.getTotalTimeLeft()),
+                LAST_MOVE_TIME, String.valueOf(entity.getLastMoveTime().toEpochMilli()),
+                POSITION_HASH, String.valueOf(entity.getPositionHash())};
     }
 
-    public void saveMatchExpiration(Long matchId, Long expirationTime) {
-        longRedisTemplate.opsForValue().set(String.format(MATCH_STATE_EXPIRATION_KEY, matchId), expirationTime, expirationTime, TimeUnit.MILLISECONDS);
+    public void saveMatchDeadline(Long matchId, Long version, long deadline) {
+        redisDeadlineService.saveDeadline(RedisDeadlineService.matchDeadline(matchId, version), deadline);
     }
 
-    // Get
+    // Get, without the position history
     public MatchStateEntity getMatchState(Long matchId) {
-        return msRedisTemplate.opsForValue().get(String.format(MATCH_STATE_KEY, matchId));
+        Map<Object, Object> fields = redisStringTemplate.opsForHash().entries(String.format(MATCH_STATE_HASH_KEY, matchId));
+        if (!fields.isEmpty()) {
+            return fromFields(fields);
+        }
+
+        // Migrate a match stored in the old layout
+        MatchStateEntity entity = msRedisTemplate.opsForValue().get(String.format(MATCH_STATE_KEY, matchId));
+        if (entity != null) {
+            // Versions start at the migration, like the hash path reads a missing version
+            if (entity.getVersion() == null) {
+                entity.setVersion(0L);
+            }
+            saveMatchState(matchId, entity);
+            msRedisTemplate.delete(String.format(MATCH_STATE_KEY, matchId));
+            entity.setPositionHistory(null);
+        }
+        return entity;
+    }
+
+    public boolean hasMatchDeadline(Long matchId, Long version) {
+        return redisDeadlineService.hasDeadline(RedisDeadlineService.matchDeadline(matchId, version));
+    }
+
+    // True for the one caller that leases the clock of this version off the deadlines
+    public boolean claimMatchDeadline(Long matchId, Long version) {
+        return redisDeadlineService.claimDeadline(RedisDeadlineService.matchDeadline(matchId, version));
+    }
+
+    public void completeMatchDeadline(Long matchId, Long version) {
+        redisDeadlineService.completeDeadline(RedisDeadlineService.matchDeadline(matchId, version));
+    }
+
+    public List<Long> getPositionHistory(Long matchId) {
+        return redisStringTemplate.opsForList().range(String.format(MATCH_POSITION_HISTORY_KEY, matchId), 0, -1)
+                .stream().map(Long::valueOf).toList();
+    }
+
+    // Moves committed so far, empty for matches started before the move list
+    public int[] getMoves(Long matchId) {
+        return redisStringTemplate.opsForList().range(String.format(MATCH_MOVES_KEY, matchId), 0, -1)
+                .stream().mapToInt(Integer::parseInt).toArray();
+    }
+
+    // Delete state, history, move list and clock in one atomic call when the version still matches, so a match ends once
+    public boolean finishMatch(Long matchId, Long expectedVersion) {
+        Long result = redisStringTemplate.execute(FINISH_MATCH_SCRIPT,
+                List.of(String.format(MATCH_STATE_HASH_KEY, matchId),
+                        String.format(MATCH_POSITION_HISTORY_KEY, matchId),
+                        String.format(MATCH_STATE_EXPIRATION_KEY, matchId),
+                        RedisDeadlineService.DEADLINES_KEY,
+                        String.format(MATCH_MOVES_KEY, matchId)),
+                String.valueOf(expectedVersion != null ? expectedVersion : 0),
+                RedisDeadlineService.matchDeadline(matchId, expectedVersion != null ? expectedVersion : 0));
+        return result != null && result == 1;
+    }
+
+    // Mapping between the entity and the hash fields
+    private static Map<String, String> toFields(MatchStateEntity entity) {
+        Map<String, String> fields = new HashMap<>();
+        putPlayer(fields, entity.getRedPlayer(), RED_PLAYER_ID, RED_PLAYER_NAME, RED_PLAYER_RATING, RED_PLAYER_TIME_LEFT);
+        putPlayer(fields, entity.getBlackPlayer(), BLACK_PLAYER_ID, BLACK_PLAYER_NAME, BLACK_PLAYER_RATING, BLACK_PLAYER_TIME_LEFT);
+        fields.put(TURN, String.valueOf(entity.getTurn()));
+        fields.put(LAST_MOVE_TIME, String.valueOf(entity.getLastMoveTime().toEpochMilli()));
+        fields.put(MODE, entity.getMode());
+        if (entity.getPositionHash() != null) {
+            fields.put(POSITION_HASH, String.valueOf(entity.getPositionHash()));
+        }
+        fields.put(VERSION, String.valueOf(entity.getVersion() != null ? entity.getVersion() : 0));
+        for (int square = 0; square < Board.SIZE; square++) {
+            fields.put(SQUARES[square], toField(entity.getBoardState().get(square)));
+        }
+        return fields;
+    }
+
+    private static MatchStateEntity fromFields(Map<Object, Object> fields) {
+        Board board = new Board();
+        for (int square = 0; square < Board.SIZE; square++) {
+            board.set(square, fromField(fields.get(SQUARES[square])));
+        }
+        return MatchStateEntity.builder()
+                .boardState(board)
+                .redPlayer(getPlayer(fields, RED_PLAYER_ID, RED_PLAYER_NAME, RED_PLAYER_RATING, RED_PLAYER_TIME_LEFT))
+                .blackPlayer(getPlayer(fields, BLACK_PLAYER_ID, BLACK_PLAYER_NAME, BLACK_PLAYER_RATING, BLACK_PLAYER_TIME_LEFT))
+                .turn(toLong(fields.get(TURN)))
+                .lastMoveTime(Instant.ofEpochMilli(toLong(fields.get(LAST_MOVE_TIME))))
+                .mode((String) fields.get(MODE))
+                .positionHash(fields.containsKey(POSITION_HASH) ? toLong(fields.get(POSITION_HASH)) : null)
+                .version(fields.containsKey(VERSION) ? toLong(fields.get(VERSION)) : 0L)
+                .build();
+    }
+
+    private static void putPlayer(Map<String, String> fields, MatchStatePlayerEntity player,
+                                  String id, String name, String rating, String timeLeft) {
+        fields.put(id, String.valueOf(player.getId()));
+        fields.put(name, player.getName());
+        fields.put(rating, String.valueOf(player.getRating()));
+        fields.put(timeLeft, String.valueOf(player.getTotalTimeLeft()));
+    }
+
+    private static MatchStatePlayerEntity getPlayer(Map<Object, Object> fields,
+                                                    String id, String name, String rating, String timeLeft) {
+        return MatchStatePlayerEntity.builder()
+                .id(toLong(fields.get(id)))
+                .name((String) fields.get(name))
+                .rating(Integer.valueOf((String) fields.get(rating)))
+                .totalTimeLeft(toLong(fields.get(timeLeft)))
+                .build();
+    }
+
+    // Square value: piece letter, empty string for an empty square
+    private static String toField(byte piece) {
+        return piece == Board.EMPTY ? "" : String.valueOf(Board.toChar(piece));
     }
 
-    // Delete
-    public void deleteMatchState(Long matchId) {
-        msRedisTemplate.delete(String.format(MATCH_STATE_KEY, matchId));
+    private static byte fromField(Object value) {
+        String piece = (String) value;
+        return piece == null || piece.isEmpty() ? Board.EMPTY : Board.fromChar(piece.charAt(0));
     }
 
-    public void deleteMatchExpiration(Long matchId) {
-        msRedisTemplate.delete(String.format(MATCH_STATE_EXPIRATION_KEY, matchId));
+    private static Long toLong(Object value) {
+        return Long.valueOf((String) value);
     }
 }
@@ -5,12 +5,13 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.TimeUnit;
 
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -20,59 +21,79 @@ import java.util.concurrent.TimeUnit;
 public class RedisQueueService {
     RedisTemplate<String, Long> redisTemplate;
 
-    // Key
-    private static final String QUEUE_KEY = "queue:";
+    // Key, queued player ids scored by rating
+    private static final String QUEUE_KEY = "queue:rating:";
+    // Membership index: queued player ids scored by join time, written and removed together with the queue entry
+    private static final String QUEUE_MEMBERS_KEY = "queue:members:";
+    // Sum of the members' join times, for the average wait
+    private static final String QUEUE_JOIN_TIME_SUM_KEY = "queue:joinTimeSum:";
+    private static final List<String> QUEUE_KEYS = List.of(QUEUE_KEY, QUEUE_MEMBERS_KEY, QUEUE_JOIN_TIME_SUM_KEY);
 
-    // Lock key
-    private static final String QUEUE_LOCK_KEY = "lock:queue:";
+    // Queue the player unless already queued, O(1) check on the membership index
+    private static final RedisScript<Long> JOIN_QUEUE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/join-queue.lua"), Long.class);
+    private static final RedisScript<Long> LEAVE_QUEUE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/leave-queue.lua"), Long.class);
+    // Whole pool in one snapshot
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> QUEUED_PLAYERS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/queued-players.lua"), List.class);
+    // Remove pairs whose players are both still queued
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM_PAIRS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/claim-pairs.lua"), List.class);
+    // Size, earliest join time and join time sum
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> QUEUE_STATS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/queue-stats.lua"), List.class);
 
-    // Time
-    private static final long LOCK_TIMEOUT_SECONDS = 10;
-    private static final long RETRY_DELAY_MILLIS = 100;
-
-    // Push
-    public void rightPush(Long id) {
-        redisTemplate.opsForList().rightPush(QUEUE_KEY, id);
+    public record QueuedPlayer(Long id, Integer rating, long joinTime) {
     }
 
-    // Get
-    public List<Long> getAll() {
-        return Objects.requireNonNull(redisTemplate.opsForList().range(QUEUE_KEY, 0, -1));
+    public record QueueStats(long size, long earliestJoinTime, long joinTimeSum) {
     }
 
-    public Long getQueueSize() {
-        return Objects.requireNonNull(redisTemplate.opsForList().size(QUEUE_KEY));
+    // Join, false when the player is already queued
+    public boolean joinQueue(Long id, Integer rating, long joinTime) {
+        Long joined = redisTemplate.execute(JOIN_QUEUE_SCRIPT, QUEUE_KEYS, id, rating.longValue(), joinTime);
+        return joined != null && joined == 1;
     }
 
-    public Long getPlayerIdByIndex(int idx) {
-        return Objects.requireNonNull(redisTemplate.opsForList().index(QUEUE_KEY, idx));
+    // Get, lowest rating first. Join time 0 when unknown
+    @SuppressWarnings("unchecked")
+    public List<QueuedPlayer> getQueuedPlayers() {
+        List<Long> values = redisTemplate.execute(QUEUED_PLAYERS_SCRIPT, List.of(QUEUE_KEY, QUEUE_MEMBERS_KEY));
+        List<QueuedPlayer> players = new ArrayList<>();
+        for (int i = 0; values != null && i + 2 < values.size(); i += 3) {
+            players.add(new QueuedPlayer(values.get(i), values.get(i + 1).intValue(), values.get(i + 2)));
+        }
+        return players;
     }
 
-    // Delete
-    public void deletePlayerId(Long id) {
-        Objects.requireNonNull(redisTemplate.opsForList().remove(QUEUE_KEY, 1, id));
+    // Claim pairs given as consecutive ids, returns the claimed ones in the same layout
+    @SuppressWarnings("unchecked")
+    public List<Long> claimPairs(List<Long> pairs) {
+        List<Long> claimed = redisTemplate.execute(CLAIM_PAIRS_SCRIPT, QUEUE_KEYS, pairs.toArray());
+        return claimed != null ? claimed : List.of();
     }
 
-    // Acquire lock
-    public void acquireQueueLock() {
-        while (true) {
-            // Try to set the lock with a timeout
-            Boolean success = redisTemplate.opsForValue().setIfAbsent(QUEUE_LOCK_KEY, 1L, LOCK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-            if (success != null && success) {
-                return;
-            }
-            try {
-                Thread.sleep(RETRY_DELAY_MILLIS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("Interrupted while waiting to retry lock acquisition", e);
-            }
+    // Put claimed players back with their original rating and join time, skipping any who joined again meanwhile
+    public void requeue(List<QueuedPlayer> players) {
+        for (QueuedPlayer player : players) {
+            redisTemplate.execute(JOIN_QUEUE_SCRIPT, QUEUE_KEYS, player.id(), player.rating().longValue(), player.joinTime());
         }
     }
 
-    // Release lock
-    public void releaseQueueLock() {
-        // Remove the lock
-        redisTemplate.delete(QUEUE_LOCK_KEY);
+    @SuppressWarnings("unchecked")
+    public QueueStats getQueueStats() {
+        List<Long> values = redisTemplate.execute(QUEUE_STATS_SCRIPT, List.of(QUEUE_MEMBERS_KEY, QUEUE_JOIN_TIME_SUM_KEY));
+        return values != null
+                ? new QueueStats(values.get(0), values.get(1), values.get(2))
+                : new QueueStats(0, 0, 0);
+    }
+
+    // Delete
+    public void deletePlayerId(Long id) {
+        redisTemplate.execute(LEAVE_QUEUE_SCRIPT, QUEUE_KEYS, id);
     }
 }
@@ -0,0 +1,208 @@
+package com.example.xiangqi.util;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.nio.ByteBuffer;
+
+public class Board {
+    // Dimensions
+    public static final int ROWS = 10;
+    public static final int COLS = 9;
+    public static final int SIZE = ROWS * COLS;
+    public static final int PACKED_BYTES = SIZE / 2;
+
+    // Piece types (low 3 bits)
+    public static final byte EMPTY = 0;
+    public static final byte ROOK = 1;
+    public static final byte HORSE = 2;
+    public static final byte ELEPHANT = 3;
+    public static final byte ADVISOR = 4;
+    public static final byte KING = 5;
+    public static final byte CANNON = 6;
+    public static final byte PAWN = 7;
+    public static final byte TYPE_MASK = 0x07;
+
+    // Color bits
+    public static final byte RED = 0x08;
+    public static final byte BLACK = 0x10;
+    public static final byte COLOR_MASK = RED | BLACK;
+
+    // Lower-case letter of each piece type, indexed by type
+    private static final char[] PIECE_LETTERS = {' ', 'r', 'h', 'e', 'a', 'k', 'c', 'p'};
+
+    // Squares indexed by row * COLS + col, row 0 is black's back rank
+    final byte[] squares;
+
+    // Cached king squares, -1 when the king is not on the board
+    int redKing = -1;
+    int blackKing = -1;
+
+    public Board() {
+        this.squares = new byte[SIZE];
+    }
+
+    private Board(byte[] squares, int redKing, int blackKing) {
+        this.squares = squares;
+        this.redKing = redKing;
+        this.blackKing = blackKing;
+    }
+
+    // Conversion from/to the String[][] layout used by clients
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static Board fromArray(String[][] rows) {
+        Board board = new Board();
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLS; col++) {
+                String piece = rows[row][col];
+                board.set(square(row, col), piece == null || piece.isEmpty() ? EMPTY : fromChar(piece.charAt(0)));
+            }
+        }
+        return board;
+    }
+
+    @JsonValue
+    public String[][] toArray() {
+        String[][] rows = new String[ROWS][COLS];
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLS; col++) {
+                byte piece = squares[square(row, col)];
+                rows[row][col] = piece == EMPTY ? "" : String.valueOf(toChar(piece));
+            }
+        }
+        return rows;
+    }
+
+    public static byte fromChar(char letter) {
+        byte color = Character.isUpperCase(letter) ? RED : BLACK;
+        return switch (Character.toLowerCase(letter)) {
+            case 'r' -> (byte) (color | ROOK);
+            case 'h' -> (byte) (color | HORSE);
+            case 'e' -> (byte) (color | ELEPHANT);
+            case 'a' -> (byte) (color | ADVISOR);
+            case 'k' -> (byte) (color | KING);
+            case 'c' -> (byte) (color | CANNON);
+            case 'p' -> (byte) (color | PAWN);
+            default -> EMPTY;
+        };
+    }
+
+    public static char toChar(byte piece) {
+        char letter = PIECE_LETTERS[type(piece)];
+        return isRed(piece) ? Character.toUpperCase(letter) : letter;
+    }
+
+    // Coordinates
+    public static int square(int row, int col) {
+        return row * COLS + col;
+    }
+
+    public static int row(int square) {
+        return square / COLS;
+    }
+
+    public static int col(int square) {
+        return square % COLS;
+    }
+
+    public static boolean isOnBoard(int row, int col) {
+        return row >= 0 && row < ROWS && col >= 0 && col < COLS;
+    }
+
+    // Access
+    public byte get(int square) {
+        return squares[square];
+    }
+
+    public byte get(int row, int col) {
+        return squares[row * COLS + col];
+    }
+
+    public void set(int square, byte piece) {
+        // Keep the king cache in sync with the squares
+        if (squares[square] == (RED | KING)) redKing = -1;
+        else if (squares[square] == (BLACK | KING)) blackKing = -1;
+        if (piece == (RED | KING)) redKing = square;
+        else if (piece == (BLACK | KING)) blackKing = square;
+        squares[square] = piece;
+    }
+
+    public int kingSquare(boolean isRed) {
+        return isRed ? redKing : blackKing;
+    }
+
+    // Apply a move in place, return the captured piece for unmakeMove
+    public byte makeMove(int from, int to) {
+        byte moved = squares[from];
+        byte captured = squares[to];
+        squares[to] = moved;
+        squares[from] = EMPTY;
+        if (type(moved) == KING) moveKing(moved, to);
+        if (type(captured) == KING) moveKing(captured, -1);
+        return captured;
+    }
+
+    // Restore the position before makeMove(from, to)
+    public void unmakeMove(int from, int to, byte captured) {
+        byte moved = squares[to];
+        squares[from] = moved;
+        squares[to] = captured;
+        if (type(moved) == KING) moveKing(moved, from);
+        if (type(captured) == KING) moveKing(captured, to);
+    }
+
+    private void moveKing(byte king, int square) {
+        if (isRed(king)) redKing = square;
+        else blackKing = square;
+    }
+
+    public Board copy() {
+        return new Board(squares.clone(), redKing, blackKing);
+    }
+
+    // Packed form: one nibble per square, red pieces 1-7, black pieces 9-15
+    public void writePacked(ByteBuffer buffer) {
+        for (int square = 0; square < SIZE; square += 2) {
+            buffer.put((byte) (toNibble(squares[square]) << 4 | toNibble(squares[square + 1])));
+        }
+    }
+
+    public static Board readPacked(ByteBuffer buffer) {
+        Board board = new Board();
+        for (int square = 0; square < SIZE; square += 2) {
+            int packed = buffer.get();
+            board.set(square, fromNibble(packed >> 4 & 0x0F));
+            board.set(square + 1, fromNibble(packed & 0x0F));
+        }
+        return board;
+    }
+
+    private static int toNibble(byte piece) {
+        return piece == EMPTY ? 0 : type(piece) | (isBlack(piece) ? 0x08 : 0);
+    }
+
+    private static byte fromNibble(int nibble) {
+        return nibble == 0 ? EMPTY : (byte) ((nibble & 0x08) != 0 ? BLACK | nibble & 0x07 : RED | nibble);
+    }
+
+    // Piece helpers
+    public static int type(byte piece) {
+        return piece & TYPE_MASK;
+    }
+
+    public static boolean isRed(byte piece) {
+        return (piece & RED) != 0;
+    }
+
+    public static boolean isBlack(byte piece) {
+        return (piece & BLACK) != 0;
+    }
+
+    public static byte color(boolean isRed) {
+        return isRed ? RED : BLACK;
+    }
+
+    public static boolean isSameColor(byte piece1, byte piece2) {
+        return (piece1 & piece2 & COLOR_MASK) != 0;
+    }
+}
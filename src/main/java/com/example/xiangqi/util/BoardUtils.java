@@ -19,8 +19,8 @@ public class BoardUtils {
             {"R", "H", "E", "A", "K", "A", "E", "H", "R"}
     };
 
-    public static String[][] getInitialBoardState() {
-        // Return initial board state
-        return INITIAL_BOARD;
+    public static Board getInitialBoardState() {
+        // Return a fresh copy of the initial board state
+        return Board.fromArray(INITIAL_BOARD);
     }
 }
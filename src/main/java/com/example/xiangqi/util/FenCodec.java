@@ -0,0 +1,64 @@
+package com.example.xiangqi.util;
+
+public class FenCodec {
+    // Piece placement field of a FEN string: ranks from black's back rank down separated by '/',
+    // digits count empty squares, letters use the same piece letters as the String[][] layout
+    private static final char RANK_SEPARATOR = '/';
+
+    public static String toFen(Board board) {
+        StringBuilder fen = new StringBuilder(Board.SIZE);
+        for (int row = 0; row < Board.ROWS; row++) {
+            if (row > 0) {
+                fen.append(RANK_SEPARATOR);
+            }
+            int empty = 0;
+            for (int col = 0; col < Board.COLS; col++) {
+                byte piece = board.get(row, col);
+                if (piece == Board.EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append((char) ('0' + empty));
+                    empty = 0;
+                }
+                fen.append(Board.toChar(piece));
+            }
+            if (empty > 0) {
+                fen.append((char) ('0' + empty));
+            }
+        }
+        return fen.toString();
+    }
+
+    public static Board fromFen(String fen) {
+        Board board = new Board();
+        int row = 0;
+        int col = 0;
+        for (int i = 0; i < fen.length(); i++) {
+            char letter = fen.charAt(i);
+            if (letter == RANK_SEPARATOR) {
+                // Every rank must be complete before moving to the next one
+                if (col != Board.COLS || ++row >= Board.ROWS) {
+                    throw new IllegalArgumentException("Invalid FEN rank: " + fen);
+                }
+                col = 0;
+            } else if (letter >= '1' && letter <= '9') {
+                col += letter - '0';
+                if (col > Board.COLS) {
+                    throw new IllegalArgumentException("Invalid FEN rank: " + fen);
+                }
+            } else {
+                byte piece = Board.fromChar(letter);
+                if (piece == Board.EMPTY || col >= Board.COLS) {
+                    throw new IllegalArgumentException("Invalid FEN piece: " + fen);
+                }
+                board.set(Board.square(row, col++), piece);
+            }
+        }
+        if (row != Board.ROWS - 1 || col != Board.COLS) {
+            throw new IllegalArgumentException("Invalid FEN length: " + fen);
+        }
+        return board;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.xiangqi.util;
+
+import static com.example.xiangqi.util.Board.*;
+import static com.example.xiangqi.util.MoveTables.*;
+
+public class MoveGenerator {
+    // Upper bounds of generated moves
+    public static final int MAX_PIECE_MOVES = 17; // Rook on an open board
+    public static final int MAX_MOVES = 128;
+
+    // Move encoding
+    public static int encode(int from, int to) {
+        return from << 8 | to;
+    }
+
+    public static int from(int move) {
+        return move >>> 8;
+    }
+
+    public static int to(int move) {
+        return move & 0xFF;
+    }
+
+    // Append every pseudo-legal move of the given side, return the new count
+    public static int generate(Board board, boolean isRedPlayer, int[] moves, int count) {
+        byte allyColor = Board.color(isRedPlayer);
+        for (int from = 0; from < SIZE; from++) {
+            if ((board.get(from) & allyColor) != 0) {
+                count = generate(board, from, moves, count);
+            }
+        }
+        return count;
+    }
+
+    // Append every pseudo-legal move of the piece on the given square, return the new count
+    public static int generate(Board board, int from, int[] moves, int count) {
+        byte piece = board.get(from);
+        int side = side(isRed(piece));
+        return switch (type(piece)) {
+            case ROOK -> generateRookMoves(board, piece, from, moves, count);
+            case HORSE -> generateBlockableMoves(board, piece, from, HORSE_MOVES[from], HORSE_LEGS[from], moves, count);
+            case CANNON -> generateCannonMoves(board, piece, from, moves, count);
+            case ELEPHANT -> generateBlockableMoves(board, piece, from, ELEPHANT_MOVES[side][from], ELEPHANT_EYES[side][from], moves, count);
+            case ADVISOR -> generateStepMoves(board, piece, from, ADVISOR_MOVES[side][from], moves, count);
+            case KING -> generateStepMoves(board, piece, from, KING_MOVES[side][from], moves, count);
+            case PAWN -> generateStepMoves(board, piece, from, PAWN_MOVES[side][from], moves, count);
+            default -> count;
+        };
+    }
+
+    private static int generateRookMoves(Board board, byte piece, int from, int[] moves, int count) {
+        for (int[] ray : RAYS[from]) {
+            // Slide until the first occupied square
+            for (int to : ray) {
+                byte target = board.get(to);
+                if (!isSameColor(piece, target)) {
+                    moves[count++] = encode(from, to);
+                }
+                if (target != EMPTY) {
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int generateCannonMoves(Board board, byte piece, int from, int[] moves, int count) {
+        for (int[] ray : RAYS[from]) {
+            boolean isScreened = false;
+            for (int to : ray) {
+                byte target = board.get(to);
+                if (!isScreened) {
+                    // Quiet moves until the screen
+                    if (target == EMPTY) {
+                        moves[count++] = encode(from, to);
+                    } else {
+                        isScreened = true;
+                    }
+                } else if (target != EMPTY) {
+                    // Capture the first piece behind the screen
+                    if (!isSameColor(piece, target)) {
+                        moves[count++] = encode(from, to);
+                    }
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Horse and elephant: each destination has a square that must be empty
+    private static int generateBlockableMoves(Board board, byte piece, int from, int[] destinations, int[] blockers, int[] moves, int count) {
+        for (int i = 0; i < destinations.length; i++) {
+            int to = destinations[i];
+            if (board.get(blockers[i]) == EMPTY && !isSameColor(piece, board.get(to))) {
+                moves[count++] = encode(from, to);
+            }
+        }
+        return count;
+    }
+
+    // Advisor, king and pawn
+    private static int generateStepMoves(Board board, byte piece, int from, int[] destinations, int[] moves, int count) {
+        for (int to : destinations) {
+            if (!isSameColor(piece, board.get(to))) {
+                moves[count++] = encode(from, to);
+            }
+        }
+        return count;
+    }
+}
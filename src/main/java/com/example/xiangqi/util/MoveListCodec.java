@@ -0,0 +1,83 @@
+package com.example.xiangqi.util;
+
+import java.nio.ByteBuffer;
+
+// Finished game as one binary value: format version, snapshot interval N, move count,
+// two bytes per move (from square, to square), then the packed board after every N plies starting at ply 0.
+// Any ply is rebuilt from the nearest snapshot at or before it with fewer than N moves.
+// Moves in and out are MoveGenerator's encoding
+public class MoveListCodec {
+    private static final byte VERSION = 1;
+    // Version, snapshot interval, move count
+    private static final int HEADER_BYTES = 1 + 1 + Short.BYTES;
+    private static final int MAX_MOVES = 0xFFFF;
+
+    public static byte[] encode(Board initialBoard, int[] moves, int snapshotInterval) {
+        if (snapshotInterval < 1 || snapshotInterval > 0xFF || moves.length > MAX_MOVES) {
+            throw new IllegalArgumentException("Move list out of range");
+        }
+        int snapshots = moves.length / snapshotInterval + 1;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + moves.length * 2 + snapshots * Board.PACKED_BYTES);
+        buffer.put(VERSION);
+        buffer.put((byte) snapshotInterval);
+        buffer.putShort((short) moves.length);
+        for (int move : moves) {
+            buffer.put((byte) MoveGenerator.from(move));
+            buffer.put((byte) MoveGenerator.to(move));
+        }
+
+        // Replay once, keeping every N-th position
+        Board board = initialBoard.copy();
+        board.writePacked(buffer);
+        for (int ply = 1; ply <= moves.length; ply++) {
+            board.makeMove(MoveGenerator.from(moves[ply - 1]), MoveGenerator.to(moves[ply - 1]));
+            if (ply % snapshotInterval == 0) {
+                board.writePacked(buffer);
+            }
+        }
+        return buffer.array();
+    }
+
+    // Reads use absolute indexes from the buffer's start, so slices of a larger buffer work without copying
+    public static int plyCount(ByteBuffer data) {
+        checkVersion(data);
+        return data.getShort(2) & 0xFFFF;
+    }
+
+    // Move that led to the given ply, from 1 to plyCount
+    public static int moveAt(ByteBuffer data, int ply) {
+        checkPly(data, ply);
+        int offset = HEADER_BYTES + (ply - 1) * 2;
+        return MoveGenerator.encode(data.get(offset) & 0xFF, data.get(offset + 1) & 0xFF);
+    }
+
+    // Position after the given number of plies, 0 is the initial position
+    public static Board positionAt(ByteBuffer data, int ply) {
+        int plyCount = plyCount(data);
+        if (ply < 0 || ply > plyCount) {
+            throw new IllegalArgumentException("Ply out of range: " + ply);
+        }
+        int snapshotInterval = data.get(1) & 0xFF;
+        int snapshot = ply / snapshotInterval;
+
+        Board board = Board.readPacked(data.duplicate()
+                .position(HEADER_BYTES + plyCount * 2 + snapshot * Board.PACKED_BYTES));
+        for (int next = snapshot * snapshotInterval + 1; next <= ply; next++) {
+            int offset = HEADER_BYTES + (next - 1) * 2;
+            board.makeMove(data.get(offset) & 0xFF, data.get(offset + 1) & 0xFF);
+        }
+        return board;
+    }
+
+    private static void checkVersion(ByteBuffer data) {
+        if (data.limit() < HEADER_BYTES || data.get(0) != VERSION) {
+            throw new IllegalArgumentException("Unsupported move list");
+        }
+    }
+
+    private static void checkPly(ByteBuffer data, int ply) {
+        if (ply < 1 || ply > plyCount(data)) {
+            throw new IllegalArgumentException("Ply out of range: " + ply);
+        }
+    }
+}
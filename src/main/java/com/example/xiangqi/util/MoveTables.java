@@ -0,0 +1,162 @@
+package com.example.xiangqi.util;
+
+import java.util.Arrays;
+
+import static com.example.xiangqi.util.Board.*;
+
+// Move and attack geometry, built once at class-load time
+public class MoveTables {
+    // Side index of the per-color tables
+    public static final int RED_SIDE = 0;
+    public static final int BLACK_SIDE = 1;
+
+    // Rays in the four orthogonal directions: RAYS[square][direction] lists the squares outward
+    public static final int[][][] RAYS = new int[SIZE][4][];
+
+    // Destination lists with the blocking square of each destination (horse leg, elephant eye)
+    public static final int[][] HORSE_MOVES = new int[SIZE][];
+    public static final int[][] HORSE_LEGS = new int[SIZE][];
+    public static final int[][][] ELEPHANT_MOVES = new int[2][SIZE][];
+    public static final int[][][] ELEPHANT_EYES = new int[2][SIZE][];
+    public static final int[][][] ADVISOR_MOVES = new int[2][SIZE][];
+    public static final int[][][] KING_MOVES = new int[2][SIZE][];
+    public static final int[][][] PAWN_MOVES = new int[2][SIZE][];
+
+    // Squares a horse attacks the square from, with the leg of each
+    public static final int[][] HORSE_ATTACKERS = new int[SIZE][];
+    public static final int[][] HORSE_ATTACKER_LEGS = new int[SIZE][];
+    // Squares a pawn of the given side attacks the square from
+    public static final int[][][] PAWN_ATTACKERS = new int[2][SIZE][];
+
+    // Blocking square of a move indexed by from * SIZE + to, -1 when the move is not a step of the piece
+    public static final byte[] HORSE_LEG = new byte[SIZE * SIZE];
+    public static final byte[][] ELEPHANT_EYE = new byte[2][SIZE * SIZE];
+    // Step masks indexed by from * SIZE + to
+    public static final boolean[][] ADVISOR_STEP = new boolean[2][SIZE * SIZE];
+    public static final boolean[][] KING_STEP = new boolean[2][SIZE * SIZE];
+    public static final boolean[][] PAWN_STEP = new boolean[2][SIZE * SIZE];
+
+    // Square masks
+    public static final boolean[][] IN_PALACE = new boolean[2][SIZE];
+    public static final boolean[][] ACROSS_RIVER = new boolean[2][SIZE];
+
+    private static final int[][] ORTHOGONAL_STEPS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+    private static final int[][] DIAGONAL_STEPS = {{-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+    // Horse steps: {rowDelta, colDelta, legRowDelta, legColDelta}
+    private static final int[][] HORSE_STEPS = {
+            {-2, -1, -1, 0}, {-2, 1, -1, 0}, {2, -1, 1, 0}, {2, 1, 1, 0},
+            {-1, -2, 0, -1}, {1, -2, 0, -1}, {-1, 2, 0, 1}, {1, 2, 0, 1}
+    };
+
+    static {
+        Arrays.fill(HORSE_LEG, (byte) -1);
+        Arrays.fill(ELEPHANT_EYE[RED_SIDE], (byte) -1);
+        Arrays.fill(ELEPHANT_EYE[BLACK_SIDE], (byte) -1);
+
+        for (int side = RED_SIDE; side <= BLACK_SIDE; side++) {
+            for (int square = 0; square < SIZE; square++) {
+                int row = row(square);
+                int col = col(square);
+                IN_PALACE[side][square] = col >= 3 && col <= 5 && (side == RED_SIDE ? row >= 7 : row <= 2);
+                ACROSS_RIVER[side][square] = side == RED_SIDE ? row <= 4 : row >= 5;
+            }
+        }
+
+        for (int square = 0; square < SIZE; square++) {
+            int row = row(square);
+            int col = col(square);
+
+            // Rays
+            for (int direction = 0; direction < 4; direction++) {
+                int[] step = ORTHOGONAL_STEPS[direction];
+                int length = 0;
+                for (int r = row + step[0], c = col + step[1]; isOnBoard(r, c); r += step[0], c += step[1]) length++;
+                int[] ray = new int[length];
+                for (int i = 0; i < length; i++) ray[i] = square(row + step[0] * (i + 1), col + step[1] * (i + 1));
+                RAYS[square][direction] = ray;
+            }
+
+            // Horse, forward and reverse
+            int[] moves = new int[8], legs = new int[8], attackers = new int[8], attackerLegs = new int[8];
+            int moveCount = 0, attackerCount = 0;
+            for (int[] step : HORSE_STEPS) {
+                int r = row + step[0];
+                int c = col + step[1];
+                if (!isOnBoard(r, c)) continue;
+                int to = square(r, c);
+                moves[moveCount] = to;
+                legs[moveCount++] = square(row + step[2], col + step[3]);
+                HORSE_LEG[square * SIZE + to] = (byte) square(row + step[2], col + step[3]);
+                // A horse on "to" reaches this square through the leg next to "to"
+                attackers[attackerCount] = to;
+                attackerLegs[attackerCount++] = square(r - step[2], c - step[3]);
+            }
+            HORSE_MOVES[square] = Arrays.copyOf(moves, moveCount);
+            HORSE_LEGS[square] = Arrays.copyOf(legs, moveCount);
+            HORSE_ATTACKERS[square] = Arrays.copyOf(attackers, attackerCount);
+            HORSE_ATTACKER_LEGS[square] = Arrays.copyOf(attackerLegs, attackerCount);
+
+            for (int side = RED_SIDE; side <= BLACK_SIDE; side++) {
+                // Elephant, cannot cross the river
+                int[] eyes = new int[4];
+                moveCount = 0;
+                for (int[] step : DIAGONAL_STEPS) {
+                    int r = row + 2 * step[0];
+                    int c = col + 2 * step[1];
+                    if (!isOnBoard(r, c) || ACROSS_RIVER[side][square(r, c)]) continue;
+                    int to = square(r, c);
+                    moves[moveCount] = to;
+                    eyes[moveCount++] = square(row + step[0], col + step[1]);
+                    ELEPHANT_EYE[side][square * SIZE + to] = (byte) square(row + step[0], col + step[1]);
+                }
+                ELEPHANT_MOVES[side][square] = Arrays.copyOf(moves, moveCount);
+                ELEPHANT_EYES[side][square] = Arrays.copyOf(eyes, moveCount);
+
+                // Advisor and king, must stay inside the palace
+                ADVISOR_MOVES[side][square] = palaceSteps(side, row, col, DIAGONAL_STEPS, ADVISOR_STEP[side]);
+                KING_MOVES[side][square] = palaceSteps(side, row, col, ORTHOGONAL_STEPS, KING_STEP[side]);
+
+                // Pawn, forward and sideways once across the river
+                int direction = side == RED_SIDE ? -1 : 1;
+                moveCount = 0;
+                if (isOnBoard(row + direction, col)) moves[moveCount++] = square(row + direction, col);
+                if (ACROSS_RIVER[side][square]) {
+                    if (col > 0) moves[moveCount++] = square(row, col - 1);
+                    if (col < COLS - 1) moves[moveCount++] = square(row, col + 1);
+                }
+                PAWN_MOVES[side][square] = Arrays.copyOf(moves, moveCount);
+                for (int i = 0; i < moveCount; i++) PAWN_STEP[side][square * SIZE + moves[i]] = true;
+            }
+        }
+
+        // Reverse pawn steps
+        for (int side = RED_SIDE; side <= BLACK_SIDE; side++) {
+            int[] counts = new int[SIZE];
+            int[][] attackers = new int[SIZE][3];
+            for (int from = 0; from < SIZE; from++) {
+                for (int to : PAWN_MOVES[side][from]) attackers[to][counts[to]++] = from;
+            }
+            for (int square = 0; square < SIZE; square++) {
+                PAWN_ATTACKERS[side][square] = Arrays.copyOf(attackers[square], counts[square]);
+            }
+        }
+    }
+
+    public static int side(boolean isRed) {
+        return isRed ? RED_SIDE : BLACK_SIDE;
+    }
+
+    private static int[] palaceSteps(int side, int row, int col, int[][] steps, boolean[] mask) {
+        int from = square(row, col);
+        int[] moves = new int[4];
+        int count = 0;
+        for (int[] step : steps) {
+            int r = row + step[0];
+            int c = col + step[1];
+            if (!isOnBoard(r, c) || !IN_PALACE[side][square(r, c)]) continue;
+            moves[count++] = square(r, c);
+            mask[from * SIZE + square(r, c)] = true;
+        }
+        return Arrays.copyOf(moves, count);
+    }
+}
@@ -1,27 +1,21 @@
 package com.example.xiangqi.util;
 
-import com.example.xiangqi.dto.model.Position;
 import com.example.xiangqi.dto.request.MoveRequest;
 
+import static com.example.xiangqi.util.Board.*;
+import static com.example.xiangqi.util.MoveTables.*;
+
 public class MoveValidator {
-    public static boolean hasLegalMoves(String[][] board, boolean isRedPlayer) {
-        for (int fromRow = 0; fromRow < 10; fromRow++) {
-            for (int fromCol = 0; fromCol < 9; fromCol++) {
-                String piece = board[fromRow][fromCol];
-                if (!piece.isEmpty() && (isRedPlayer ? isRedPiece(piece) : isBlackPiece(piece))) {
-                    // Try every possible destination
-                    for (int toRow = 0; toRow < 10; toRow++) {
-                        for (int toCol = 0; toCol < 9; toCol++) {
-                            // Define move request
-                            MoveRequest request = MoveRequest.builder()
-                                    .from(new Position(fromRow, fromCol))
-                                    .to(new Position(toRow, toCol))
-                                    .build();
-                            // Check if the move is valid
-                            if (isValidMove(board, request)) {
-                                return true; // Found at least one legal move
-                            }
-                        }
+    public static boolean hasLegalMoves(Board board, boolean isRedPlayer) {
+        byte allyColor = Board.color(isRedPlayer);
+        int[] moves = new int[MoveGenerator.MAX_PIECE_MOVES];
+        for (int from = 0; from < SIZE; from++) {
+            if ((board.get(from) & allyColor) != 0) {
+                // Only try the piece's real candidate destinations
+                int count = MoveGenerator.generate(board, from, moves, 0);
+                for (int i = 0; i < count; i++) {
+                    if (isKingSafeAfterMove(board, from, MoveGenerator.to(moves[i]))) {
+                        return true; // Found at least one legal move
                     }
                 }
             }
@@ -29,372 +23,173 @@ public class MoveValidator {
         return false; // No legal moves found
     }
 
-    public static boolean isValidMove(String[][] board, MoveRequest moveRequest) {
+    // Fill the buffer with every legal move of the given side, return the move count
+    public static int generateLegalMoves(Board board, boolean isRedPlayer, int[] moves) {
+        int count = MoveGenerator.generate(board, isRedPlayer, moves, 0);
+        int legalCount = 0;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (isKingSafeAfterMove(board, MoveGenerator.from(move), MoveGenerator.to(move))) {
+                moves[legalCount++] = move;
+            }
+        }
+        return legalCount;
+    }
+
+    public static boolean isValidMove(Board board, MoveRequest moveRequest) {
         // Get move request detail
         int fromRow = moveRequest.getFrom().getRow();
         int fromCol = moveRequest.getFrom().getCol();
         int toRow = moveRequest.getTo().getRow();
         int toCol = moveRequest.getTo().getCol();
-        // Get moved piece
-        String movedPiece = board[fromRow][fromCol];
 
-        // Check if the piece exists
-        if (movedPiece.isEmpty()) {
+        // Check if the piece move out of board
+        if (!isOnBoard(fromRow, fromCol) || !isOnBoard(toRow, toCol)) {
             return false;
         }
 
-        // Check if the piece move out of board
-        if (isOutOfBoard(moveRequest)){
+        return isValidMove(board, square(fromRow, fromCol), square(toRow, toCol));
+    }
+
+    private static boolean isValidMove(Board board, int from, int to) {
+        // Get moved piece
+        byte movedPiece = board.get(from);
+
+        // Check if the piece exists
+        if (movedPiece == EMPTY) {
             return false;
         }
 
         // Ensure the destination is not occupied by the player's own piece
-        if (!board[toRow][toCol].isEmpty() && isSameColor(movedPiece, board[toRow][toCol])) {
+        if (isSameColor(movedPiece, board.get(to))) {
             return false;
         }
 
-        // Simulate the move on a temporary board
-        String[][] tempBoard = DeepClone.clone(board); // Create a copy of the board
-        tempBoard[toRow][toCol] = tempBoard[fromRow][fromCol]; // Move the piece
-        tempBoard[fromRow][fromCol] = ""; // Empty the old position
-
-        // Check if kings face each other after the move
-        if (areKingsFacing(tempBoard)) {
-            return false; // Move is invalid if kings face each other
-        }
-        // Check if the move puts the player's own king in check
-        String allyColor = isRedPiece(movedPiece) ? "red" : "black";
-        if (isKingInCheck(tempBoard, allyColor)) {
-            return false; // Move is invalid if it puts own king in check
+        // Validate move based on the piece type
+        if (!isValidPieceMove(board, movedPiece, from, to)) {
+            return false;
         }
 
-        // Validate move based on the piece type
-        return switch (Character.toLowerCase(movedPiece.charAt(0))) {
-            case 'r' -> isValidRookMove(board, moveRequest);
-            case 'h' -> isValidHorseMove(board, moveRequest);
-            case 'c' -> isValidCannonMove(board, moveRequest);
-            case 'e' -> isValidElephantMove(board, moveRequest);
-            case 'a' -> isValidAdvisorMove(moveRequest, movedPiece);
-            case 'k' -> isValidKingMove(moveRequest, movedPiece);
-            case 'p' -> isValidPawnMove(moveRequest, movedPiece);
-            default -> false;
-        };
+        return isKingSafeAfterMove(board, from, to);
     }
 
-    private static boolean isOutOfBoard(MoveRequest moveRequest) {
-        // Get move request detail
-        int fromRow = moveRequest.getFrom().getRow();
-        int fromCol = moveRequest.getFrom().getCol();
-        int toRow = moveRequest.getTo().getRow();
-        int toCol = moveRequest.getTo().getCol();
-        // Out of range
-        if (fromRow < 0 || fromCol > 9 || toRow < 0 || toRow > 9)
-            return true;
-        if (fromCol < 0 || fromCol > 8 || toCol < 0 || toCol > 8)
-            return true;
+    private static boolean isKingSafeAfterMove(Board board, int from, int to) {
+        boolean isRedAlly = isRed(board.get(from));
 
-        return false;
-    }
+        // Simulate the move in place
+        byte captured = board.makeMove(from, to);
+        // Move is invalid if kings face each other or own king is in check
+        boolean isSafe = !isKingInCheck(board, isRedAlly);
+        // Restore the board
+        board.unmakeMove(from, to, captured);
 
-    private static boolean isSameColor(String piece1, String piece2) {
-        return (Character.isUpperCase(piece1.charAt(0)) && Character.isUpperCase(piece2.charAt(0))) ||
-                (Character.isLowerCase(piece1.charAt(0)) && Character.isLowerCase(piece2.charAt(0)));
+        return isSafe;
     }
 
-    private static boolean isValidRookMove(String[][] board, MoveRequest moveRequest) {
-        // Get move request detail
-        int fromRow = moveRequest.getFrom().getRow();
-        int fromCol = moveRequest.getFrom().getCol();
-        int toRow = moveRequest.getTo().getRow();
-        int toCol = moveRequest.getTo().getCol();
-
-        // Check move valid:
-        if (fromRow == toRow) {
-            return isPathClear(board, moveRequest, true);
-        } else if (fromCol == toCol) {
-            return isPathClear(board, moveRequest, false);
-        }
-        return false;
+    private static boolean isValidPieceMove(Board board, byte piece, int from, int to) {
+        int side = side(isRed(piece));
+        int move = from * SIZE + to;
+        return switch (type(piece)) {
+            case ROOK -> isValidRookMove(board, from, to);
+            case HORSE -> isValidHorseMove(board, move);
+            case CANNON -> isValidCannonMove(board, from, to);
+            case ELEPHANT -> isValidElephantMove(board, side, move);
+            case ADVISOR -> ADVISOR_STEP[side][move];
+            case KING -> KING_STEP[side][move];
+            case PAWN -> PAWN_STEP[side][move];
+            default -> false;
+        };
     }
 
-    private static boolean isPathClear(String[][] board, MoveRequest request, boolean isRowFixed) {
-        // Get move request detail
-        int fromRow = request.getFrom().getRow();
-        int fromCol = request.getFrom().getCol();
-        int toRow = request.getTo().getRow();
-        int toCol = request.getTo().getCol();
-        // Simplify move request
-        int fixed = isRowFixed ? fromRow : fromCol;
-        int start = isRowFixed ? fromCol : fromRow;
-        int end = isRowFixed ? toCol : toRow;
-
-        // Check move valid
-        int min = Math.min(start, end);
-        int max = Math.max(start, end);
-
-        for (int i = min + 1; i < max; i++) {
-            if (!(isRowFixed ? board[fixed][i] : board[i][fixed]).isEmpty()) {
-                return false;
-            }
-        }
-        return true;
+    private static boolean isValidRookMove(Board board, int from, int to) {
+        return countPiecesBetween(board, from, to) == 0;
     }
 
-    private static boolean isValidHorseMove(String[][] board, MoveRequest moveRequest) {
-        // Get move request detail
-        int fromRow = moveRequest.getFrom().getRow();
-        int fromCol = moveRequest.getFrom().getCol();
-        int toRow = moveRequest.getTo().getRow();
-        int toCol = moveRequest.getTo().getCol();
-
-        // Check move valid:
-        int rowDiff = Math.abs(toRow - fromRow);
-        int colDiff = Math.abs(toCol - fromCol);
-
-        if (rowDiff == 2 && colDiff == 1) {
-            return board[(fromRow + toRow) / 2][fromCol].isEmpty();
-        } else if (rowDiff == 1 && colDiff == 2) {
-            return board[fromRow][(fromCol + toCol) / 2].isEmpty();
-        }
-        return false;
+    private static boolean isValidHorseMove(Board board, int move) {
+        // The leg must exist and must not be blocked
+        int leg = HORSE_LEG[move];
+        return leg >= 0 && board.get(leg) == EMPTY;
     }
 
-    private static boolean isValidCannonMove(String[][] board, MoveRequest moveRequest) {
-        // Get move request detail
-        int fromRow = moveRequest.getFrom().getRow();
-        int fromCol = moveRequest.getFrom().getCol();
-        int toRow = moveRequest.getTo().getRow();
-        int toCol = moveRequest.getTo().getCol();
-        // Check move valid
-        boolean isCapture = !board[toRow][toCol].isEmpty();
-        int count = countPiecesBetween(board, moveRequest);
-
-        // Check if move is horizontal or vertical
-        if (fromRow != toRow && fromCol != toCol) {
-            return false; // Diagonal moves are invalid
-        }
-
-        return (isCapture && count == 1) || (!isCapture && count == 0);
-    }
-
-    private static boolean isValidElephantMove(String[][] board, MoveRequest moveRequest) {
-        // Get move request detail
-        int fromRow = moveRequest.getFrom().getRow();
-        int fromCol = moveRequest.getFrom().getCol();
-        int toRow = moveRequest.getTo().getRow();
-        int toCol = moveRequest.getTo().getCol();
-        // Get moved piece
-        String piece = board[fromRow][fromCol];
-
-        // Check move valid:
-        // Must move exactly 2 diagonally
-        if (Math.abs(toRow - fromRow) != 2 || Math.abs(toCol - fromCol) != 2) {
-            return false;
-        }
-
-        // Cannot cross the river
-        boolean isRed = Character.isUpperCase(piece.charAt(0));
-        if ((isRed && toRow < 5) || (!isRed && toRow > 4)) {
-            return false;
-        }
-
-        // Midpoint check
-        int midRow = (fromRow + toRow) / 2;
-        int midCol = (fromCol + toCol) / 2;
-        // Jumping over a piece is not allowed
-        return board[midRow][midCol].isEmpty();
+    private static boolean isValidCannonMove(Board board, int from, int to) {
+        // Move without capture needs a clear path, capture needs exactly one screen
+        int count = countPiecesBetween(board, from, to);
+        return board.get(to) == EMPTY ? count == 0 : count == 1;
     }
 
-    private static boolean isValidAdvisorMove(MoveRequest moveRequest, String piece) {
-        // Get move request detail
-        int fromRow = moveRequest.getFrom().getRow();
-        int fromCol = moveRequest.getFrom().getCol();
-        int toRow = moveRequest.getTo().getRow();
-        int toCol = moveRequest.getTo().getCol();
-
-        // Check move valid:
-        // Must move exactly 1 diagonally
-        if (Math.abs(toRow - fromRow) != 1 || Math.abs(toCol - fromCol) != 1) {
-            return false;
-        }
-
-        // Must stay inside the palace
-        if (toCol < 3 || toCol > 5) {
-            return false;
-        }
-
-        boolean isRed = Character.isUpperCase(piece.charAt(0));
-        return (!isRed || (toRow >= 7 && toRow <= 9)) && (isRed || (toRow >= 0 && toRow <= 2));
+    private static boolean isValidElephantMove(Board board, int side, int move) {
+        // Must stay on its side of the river, jumping over a piece is not allowed
+        int eye = ELEPHANT_EYE[side][move];
+        return eye >= 0 && board.get(eye) == EMPTY;
     }
 
-    private static boolean isValidKingMove(MoveRequest moveRequest, String piece) {
-        // Get move request detail
-        int fromRow = moveRequest.getFrom().getRow();
-        int fromCol = moveRequest.getFrom().getCol();
-        int toRow = moveRequest.getTo().getRow();
-        int toCol = moveRequest.getTo().getCol();
-
-        // Check move valid:
-        // Must move exactly 1 step (vertically or horizontally)
-        if ((Math.abs(toRow - fromRow) + Math.abs(toCol - fromCol)) != 1) {
-            return false;
+    // Pieces between two squares on the same line, -1 when not on the same line
+    private static int countPiecesBetween(Board board, int from, int to) {
+        int step;
+        if (row(from) == row(to)) {
+            step = from < to ? 1 : -1;
+        } else if (col(from) == col(to)) {
+            step = from < to ? COLS : -COLS;
+        } else {
+            return -1;
         }
-
-        // Must stay inside the palace
-        if (toCol < 3 || toCol > 5) {
-            return false;
-        }
-
-        boolean isRed = Character.isUpperCase(piece.charAt(0));
-        return (!isRed || (toRow >= 7 && toRow <= 9)) && (isRed || (toRow >= 0 && toRow <= 2));
-    }
-
-    private static int countPiecesBetween(String[][] board, MoveRequest moveRequest) {
-        // Get move request detail
-        int fromRow = moveRequest.getFrom().getRow();
-        int fromCol = moveRequest.getFrom().getCol();
-        int toRow = moveRequest.getTo().getRow();
-        int toCol = moveRequest.getTo().getCol();
         // Counting
         int count = 0;
-        if (fromRow == toRow) {
-            for (int i = Math.min(fromCol, toCol) + 1; i < Math.max(fromCol, toCol); i++) {
-                if (!board[fromRow][i].isEmpty()) count++;
-            }
-        } else if (fromCol == toCol) {
-            for (int i = Math.min(fromRow, toRow) + 1; i < Math.max(fromRow, toRow); i++) {
-                if (!board[i][fromCol].isEmpty()) count++;
-            }
+        for (int square = from + step; square != to; square += step) {
+            if (board.get(square) != EMPTY) count++;
         }
         return count;
     }
 
-    private static boolean isValidPawnMove(MoveRequest moveRequest, String piece) {
-        // Get move request detail
-        int fromRow = moveRequest.getFrom().getRow();
-        int fromCol = moveRequest.getFrom().getCol();
-        int toRow = moveRequest.getTo().getRow();
-        int toCol = moveRequest.getTo().getCol();
-
-        // Check move valid:
-        int direction = Character.isUpperCase(piece.charAt(0)) ? -1 : 1; // Red moves up, Black moves down
-        boolean isAcrossRiver = (Character.isUpperCase(piece.charAt(0)) && fromRow <= 4) ||
-                (Character.isLowerCase(piece.charAt(0)) && fromRow >= 5);
-
-        // Moving forward
-        if (toRow == fromRow + direction && toCol == fromCol) {
-            return true;
-        }
-
-        // Moving sideways after crossing the river
-        return isAcrossRiver && toRow == fromRow && Math.abs(toCol - fromCol) == 1;
-    }
+    // Check detection works backward from the king: anything attacking it must sit on one of these squares
+    public static boolean isKingInCheck(Board board, boolean isRedAlly) {
+        int king = board.kingSquare(isRedAlly);
+        if (king == -1) return false; // King not found (shouldn't happen in valid game)
 
-    private static boolean areKingsFacing(String[][] board) {
-        int redKingRow = -1, redKingCol = -1;
-        int blackKingRow = -1, blackKingCol = -1;
+        byte enemyColor = Board.color(!isRedAlly);
 
-        // Find the positions of the two kings
-        for (int row = 0; row < 10; row++) {
-            for (int col = 3; col <= 5; col++) { // Kings are always in these columns
-                if (board[row][col].equals("K")) {
-                    redKingRow = row;
-                    redKingCol = col;
-                } else if (board[row][col].equals("k")) {
-                    blackKingRow = row;
-                    blackKingCol = col;
+        // Rook, cannon and facing king along the four rays
+        for (int[] ray : RAYS[king]) {
+            int screens = 0;
+            for (int square : ray) {
+                byte piece = board.get(square);
+                if (piece == EMPTY) {
+                    continue;
                 }
-            }
-        }
-
-        // Ensure both kings were found
-        if (redKingRow == -1 || blackKingRow == -1) {
-            return false;
-        }
-
-        // Kings must be in the same column
-        if (redKingCol != blackKingCol) {
-            return false;
-        }
-
-        // Check if there are any pieces between them
-        for (int row = redKingRow - 1; row > blackKingRow; row--) {
-            if (!board[row][redKingCol].isEmpty()) { // If there's a piece between them
-                return false;
-            }
-        }
-
-        // If no piece is blocking, kings are facing each other (illegal move)
-        return true;
-    }
-
-    private static boolean isKingInCheck(String[][] board, String allyColor) {
-        // Find the allied king's position
-        int kingRow = -1;
-        int kingCol = -1;
-        for (int row = 0; row < 10; row++) {
-            for (int col = 3; col <= 5; col++) {
-                String piece = board[row][col];
-                if (!piece.isEmpty() && Character.toLowerCase(piece.charAt(0)) == 'k' &&
-                        (allyColor.equals("red") ? isRedPiece(piece) : isBlackPiece(piece))) {
-                    kingRow = row;
-                    kingCol = col;
+                if ((piece & enemyColor) != 0) {
+                    int type = type(piece);
+                    if (screens == 0 && (type == ROOK || type == KING)) {
+                        return true; // Rook attack or kings facing each other
+                    }
+                    if (screens == 1 && type == CANNON) {
+                        return true; // Cannon attack over one screen
+                    }
+                }
+                if (++screens == 2) {
                     break;
                 }
             }
-            if (kingRow != -1) break;
         }
 
-        if (kingRow == -1) return false; // King not found (shouldn't happen in valid game)
+        // Horse attack through an empty leg
+        byte enemyHorse = (byte) (enemyColor | HORSE);
+        int[] horses = HORSE_ATTACKERS[king];
+        int[] legs = HORSE_ATTACKER_LEGS[king];
+        for (int i = 0; i < horses.length; i++) {
+            if (board.get(horses[i]) == enemyHorse && board.get(legs[i]) == EMPTY) {
+                return true;
+            }
+        }
 
-        // Check if any enemy piece can move to the king's position
-        String enemyColor = allyColor.equals("red") ? "black" : "red";
-        for (int row = 0; row < 10; row++) {
-            for (int col = 0; col < 9; col++) {
-                // Get moved piece
-                String movedPiece = board[row][col];
-                // Define move request
-                MoveRequest moveRequest = MoveRequest.builder()
-                        .from(new Position(row, col))
-                        .to(new Position(kingRow, kingCol))
-                        .build();
-                if (!movedPiece.isEmpty() && (enemyColor.equals("red") ? isRedPiece(movedPiece) : isBlackPiece(movedPiece))) {
-                    switch (Character.toLowerCase(movedPiece.charAt(0))) {
-                        case 'r':
-                            if (isValidRookMove(board, moveRequest)) return true;
-                            break;
-                        case 'h':
-                            if (isValidHorseMove(board, moveRequest)) return true;
-                            break;
-                        case 'c':
-                            if (isValidCannonMove(board, moveRequest)) return true;
-                            break;
-                        case 'e':
-                            if (isValidElephantMove(board, moveRequest)) return true;
-                            break;
-                        case 'a':
-                            if (isValidAdvisorMove(moveRequest, movedPiece)) return true;
-                            break;
-                        case 'k':
-                            if (isValidKingMove(moveRequest, movedPiece)) return true;
-                            break;
-                        case 'p':
-                            if (isValidPawnMove(moveRequest, movedPiece)) return true;
-                            break;
-                    }
-                }
+        // Pawn attack from the front, or from the side once the pawn crossed the river
+        byte enemyPawn = (byte) (enemyColor | PAWN);
+        for (int square : PAWN_ATTACKERS[side(!isRedAlly)][king]) {
+            if (board.get(square) == enemyPawn) {
+                return true;
             }
         }
 
+        // Advisors and elephants cannot reach the enemy palace
         return false;
     }
-
-    // Helper methods to determine piece color
-    private static boolean isRedPiece(String piece) {
-        return !piece.isEmpty() && Character.isUpperCase(piece.charAt(0));
-    }
-
-    private static boolean isBlackPiece(String piece) {
-        return !piece.isEmpty() && Character.isLowerCase(piece.charAt(0));
-    }
 }
@@ -0,0 +1,207 @@
+package com.example.xiangqi.util;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Hierarchical timing wheel: O(1) schedule and cancel, deadlines in epoch millis.
+// Each level has wheelSize buckets, a level's whole span is one bucket of the next coarser level.
+// Only non-empty buckets are queued, a single thread sleeps until the earliest one is due,
+// then moves its timeouts down to finer levels or hands them to the executor when due
+public class TimingWheel implements AutoCloseable {
+    private final Executor executor;
+    private final DelayQueue<Bucket> queue = new DelayQueue<>();
+    private final Level root;
+    private final Thread driver;
+    private volatile boolean isRunning = true;
+
+    public TimingWheel(String name, long tickMillis, int wheelSize, Executor executor) {
+        this.executor = executor;
+        this.root = new Level(tickMillis, wheelSize, System.currentTimeMillis());
+        this.driver = new Thread(this::run, name);
+        this.driver.setDaemon(true);
+        this.driver.start();
+    }
+
+    // Run the task once the deadline has passed, unless cancelled first
+    public synchronized Timeout schedule(long deadline, Runnable task) {
+        Timeout timeout = new Timeout(deadline, task);
+        addOrRun(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void close() {
+        isRunning = false;
+        driver.interrupt();
+    }
+
+    private void run() {
+        while (isRunning) {
+            try {
+                Bucket bucket = queue.take();
+                synchronized (this) {
+                    // Drain every bucket due by now
+                    while (bucket != null) {
+                        root.advance(bucket.expiration);
+                        bucket.flush(this::addOrRun);
+                        bucket = queue.poll();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void addOrRun(Timeout timeout) {
+        if (!timeout.isCancelled && !root.add(timeout)) {
+            executor.execute(timeout.task);
+        }
+    }
+
+    public final class Timeout {
+        private final long deadline;
+        private final Runnable task;
+        private boolean isCancelled;
+        // Position in its bucket
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public void cancel() {
+            synchronized (TimingWheel.this) {
+                isCancelled = true;
+                if (bucket != null) {
+                    bucket.remove(this);
+                }
+            }
+        }
+    }
+
+    private final class Level {
+        private final long tickMillis;
+        private final int wheelSize;
+        private final long span;
+        private final Bucket[] buckets;
+        // Start of the current tick, a multiple of tickMillis
+        private long currentTime;
+        // Created on first use
+        private Level overflow;
+
+        private Level(long tickMillis, int wheelSize, long startTime) {
+            this.tickMillis = tickMillis;
+            this.wheelSize = wheelSize;
+            this.span = tickMillis * wheelSize;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+            this.currentTime = startTime - startTime % tickMillis;
+        }
+
+        // False when the timeout is already due
+        private boolean add(Timeout timeout) {
+            if (timeout.deadline < currentTime + tickMillis) {
+                return false;
+            }
+            if (timeout.deadline < currentTime + span) {
+                long tick = timeout.deadline / tickMillis;
+                Bucket bucket = buckets[(int) (tick % wheelSize)];
+                bucket.add(timeout);
+                // Queue the bucket when it starts a new round
+                if (bucket.setExpiration(tick * tickMillis)) {
+                    queue.offer(bucket);
+                }
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level(span, wheelSize, currentTime);
+            }
+            return overflow.add(timeout);
+        }
+
+        private void advance(long time) {
+            if (time >= currentTime + tickMillis) {
+                currentTime = time - time % tickMillis;
+                if (overflow != null) {
+                    overflow.advance(currentTime);
+                }
+            }
+        }
+    }
+
+    // Doubly linked list of timeouts, queued while it holds any
+    private static final class Bucket implements Delayed {
+        private Timeout head;
+        // Start of the tick the bucket currently holds, -1 when empty
+        private volatile long expiration = -1;
+
+        private boolean setExpiration(long expiration) {
+            boolean isChanged = this.expiration != expiration;
+            this.expiration = expiration;
+            return isChanged;
+        }
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        // Empty the bucket, passing each timeout on
+        private void flush(Consumer<Timeout> consumer) {
+            Timeout timeout = head;
+            head = null;
+            expiration = -1;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.bucket = null;
+                timeout.prev = null;
+                timeout.next = null;
+                consumer.accept(timeout);
+                timeout = next;
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiration - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiration, ((Bucket) other).expiration);
+        }
+    }
+}
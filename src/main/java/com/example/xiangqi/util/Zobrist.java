@@ -0,0 +1,45 @@
+package com.example.xiangqi.util;
+
+import java.util.SplittableRandom;
+
+public class Zobrist {
+    // Fixed seed, hashes are stored in Redis and must be stable across nodes and restarts
+    private static final long SEED = 0x5EED_C0DE_2025L;
+
+    // Keys indexed by piece code, then square
+    private static final long[][] PIECE_KEYS = new long[Board.COLOR_MASK + 1][Board.SIZE];
+    private static final long BLACK_TO_MOVE_KEY;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (byte color : new byte[]{Board.RED, Board.BLACK}) {
+            for (byte type = Board.ROOK; type <= Board.PAWN; type++) {
+                for (int square = 0; square < Board.SIZE; square++) {
+                    PIECE_KEYS[color | type][square] = random.nextLong();
+                }
+            }
+        }
+        BLACK_TO_MOVE_KEY = random.nextLong();
+    }
+
+    // Full hash of a position
+    public static long hash(Board board, boolean isRedToMove) {
+        long hash = isRedToMove ? 0 : BLACK_TO_MOVE_KEY;
+        for (int square = 0; square < Board.SIZE; square++) {
+            byte piece = board.get(square);
+            if (piece != Board.EMPTY) {
+                hash ^= PIECE_KEYS[piece][square];
+            }
+        }
+        return hash;
+    }
+
+    // Hash after moving a piece, also flips the side to move
+    public static long update(long hash, byte movedPiece, int from, int to, byte capturedPiece) {
+        hash ^= PIECE_KEYS[movedPiece][from] ^ PIECE_KEYS[movedPiece][to] ^ BLACK_TO_MOVE_KEY;
+        if (capturedPiece != Board.EMPTY) {
+            hash ^= PIECE_KEYS[capturedPiece][to];
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,10 @@
+-- Lease one deadline whatever its score
+-- KEYS[1] deadlines, KEYS[2] leased deadlines scored by lease expiry
+-- ARGV[1] member, ARGV[2] lease expiry in epoch milliseconds
+-- Returns 1 for the one caller that moved the member, 0 when it was already gone
+
+if redis.call('ZREM', KEYS[1], ARGV[1]) == 0 then
+    return 0
+end
+redis.call('ZADD', KEYS[2], ARGV[2], ARGV[1])
+return 1
@@ -0,0 +1,22 @@
+-- Lease due deadlines, each member is handed to exactly one caller at a time
+-- KEYS[1] deadlines, KEYS[2] leased deadlines scored by lease expiry
+-- ARGV[1] now in epoch milliseconds, ARGV[2] batch size, ARGV[3] lease expiry in epoch milliseconds
+-- Returns the leased members, earliest first
+
+-- Put back leases whose holder never completed them, they are due right away
+local expired = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+for _, member in ipairs(expired) do
+    redis.call('ZADD', KEYS[1], ARGV[1], member)
+end
+if #expired > 0 then
+    redis.call('ZREM', KEYS[2], unpack(expired))
+end
+
+local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+for _, member in ipairs(due) do
+    redis.call('ZADD', KEYS[2], ARGV[3], member)
+end
+if #due > 0 then
+    redis.call('ZREM', KEYS[1], unpack(due))
+end
+return due
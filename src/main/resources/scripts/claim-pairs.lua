@@ -0,0 +1,20 @@
+-- Take paired players off the queue, skipping pairs where either player left meanwhile
+-- KEYS[1] queue sorted set scored by rating, KEYS[2] members scored by join time, KEYS[3] sum of join times
+-- ARGV player ids, two per pair
+-- Returns the ids of the claimed pairs, two per pair
+
+local claimed = {}
+for i = 1, #ARGV, 2 do
+    if redis.call('ZSCORE', KEYS[1], ARGV[i]) and redis.call('ZSCORE', KEYS[1], ARGV[i + 1]) then
+        for _, id in ipairs({ ARGV[i], ARGV[i + 1] }) do
+            local joinTime = redis.call('ZSCORE', KEYS[2], id)
+            if joinTime then
+                redis.call('DECRBY', KEYS[3], joinTime)
+            end
+            redis.call('ZREM', KEYS[1], id)
+            redis.call('ZREM', KEYS[2], id)
+            claimed[#claimed + 1] = id
+        end
+    end
+end
+return claimed
@@ -0,0 +1,23 @@
+-- Commit a move atomically
+-- KEYS[1] state hash, KEYS[2] position history, KEYS[3] deadlines, KEYS[4] move list
+-- ARGV[1] expected turn, ARGV[2] expected version, ARGV[3] previous position hash,
+-- ARGV[4] clock deadline in epoch milliseconds, ARGV[5] deadline member prefix, ARGV[6] packed move,
+-- ARGV[7..] changed state fields as field/value pairs
+-- Returns the new version, 0 when turn or version changed, -1 when the match does not exist
+
+local state = redis.call('HMGET', KEYS[1], 'turn', 'version')
+if not state[1] then
+    return -1
+end
+if state[1] ~= ARGV[1] or (state[2] or '0') ~= ARGV[2] then
+    return 0
+end
+
+redis.call('HSET', KEYS[1], unpack(ARGV, 7))
+redis.call('RPUSH', KEYS[2], ARGV[3])
+redis.call('RPUSH', KEYS[4], ARGV[6])
+local version = redis.call('HINCRBY', KEYS[1], 'version', 1)
+-- Move the clock from the previous version to the new one
+redis.call('ZREM', KEYS[3], ARGV[5] .. (state[2] or '0'))
+redis.call('ZADD', KEYS[3], ARGV[4], ARGV[5] .. version)
+return version
@@ -0,0 +1,17 @@
+-- End a match atomically, at most once
+-- KEYS[1] state hash, KEYS[2] position history, KEYS[3] legacy clock expiration, KEYS[4] deadlines,
+-- KEYS[5] move list
+-- ARGV[1] expected version, ARGV[2] deadline member of that version
+-- Returns 1 when the state was removed, 0 when the version changed, -1 when the match does not exist
+
+local version = redis.call('HGET', KEYS[1], 'version')
+if not version then
+    return -1
+end
+if version ~= ARGV[1] then
+    return 0
+end
+
+redis.call('DEL', KEYS[1], KEYS[2], KEYS[3], KEYS[5])
+redis.call('ZREM', KEYS[4], ARGV[2])
+return 1
@@ -0,0 +1,12 @@
+-- Queue a player unless already queued
+-- KEYS[1] queue sorted set scored by rating, KEYS[2] members scored by join time, KEYS[3] sum of join times
+-- ARGV[1] player id, ARGV[2] rating, ARGV[3] join time in epoch milliseconds
+-- Returns 1 when queued, 0 when the player was already queued
+
+if redis.call('ZSCORE', KEYS[2], ARGV[1]) then
+    return 0
+end
+redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+redis.call('ZADD', KEYS[2], ARGV[3], ARGV[1])
+redis.call('INCRBY', KEYS[3], ARGV[3])
+return 1
@@ -0,0 +1,13 @@
+-- Take a player off the queue
+-- KEYS[1] queue sorted set scored by rating, KEYS[2] members scored by join time, KEYS[3] sum of join times
+-- ARGV[1] player id
+-- Returns 1 when the player was queued, 0 otherwise
+
+local joinTime = redis.call('ZSCORE', KEYS[2], ARGV[1])
+redis.call('ZREM', KEYS[1], ARGV[1])
+if not joinTime then
+    return 0
+end
+redis.call('ZREM', KEYS[2], ARGV[1])
+redis.call('DECRBY', KEYS[3], joinTime)
+return 1
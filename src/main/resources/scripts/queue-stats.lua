@@ -0,0 +1,7 @@
+-- Queue size and wait times without scanning the queue
+-- KEYS[1] members scored by join time, KEYS[2] sum of join times
+-- Returns size, earliest join time (0 when empty), sum of join times
+
+local size = redis.call('ZCARD', KEYS[1])
+local earliest = redis.call('ZRANGE', KEYS[1], 0, 0, 'WITHSCORES')
+return { size, earliest[2] or '0', redis.call('GET', KEYS[2]) or '0' }
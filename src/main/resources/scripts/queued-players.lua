@@ -0,0 +1,12 @@
+-- Read the whole waiting pool in one consistent snapshot
+-- KEYS[1] queue sorted set scored by rating, KEYS[2] members scored by join time
+-- Returns id, rating, join time for each player, lowest rating first
+
+local queue = redis.call('ZRANGE', KEYS[1], 0, -1, 'WITHSCORES')
+local players = {}
+for i = 1, #queue, 2 do
+    players[#players + 1] = queue[i]
+    players[#players + 1] = queue[i + 1]
+    players[#players + 1] = redis.call('ZSCORE', KEYS[2], queue[i]) or '0'
+end
+return players
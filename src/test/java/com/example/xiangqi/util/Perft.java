@@ -0,0 +1,164 @@
+package com.example.xiangqi.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Move generator node counts, run by PerftTest and from the command line
+public class Perft {
+    // Reference positions, rows from black's back rank down, '.' is an empty square.
+    // Only the start position has published counts (chessprogramming.org, Xiangqi perft). The others are
+    // regression values recorded from this engine once the start position matched, they catch changes, not bugs
+    public static final List<Reference> REFERENCES = List.of(
+            new Reference("start", BoardUtils.getInitialBoardState(), true,
+                    new long[]{44, 1_920, 79_666, 3_290_240}),
+            new Reference("cannon-screens", parse(
+                    "...akae..",
+                    ".........",
+                    "..c.eh.c.",
+                    "p.......p",
+                    "..C.p.P..",
+                    ".........",
+                    "P..c.....",
+                    "....C..C.",
+                    ".........",
+                    "..EAKAE.."), true,
+                    new long[]{36, 1_431, 52_017, 2_067_448}),
+            new Reference("flying-general", parse(
+                    "...k.....",
+                    ".........",
+                    ".........",
+                    ".........",
+                    "...H.....",
+                    "......r..",
+                    ".........",
+                    ".........",
+                    ".........",
+                    "...K....."), true,
+                    new long[]{2, 37, 233, 3_618}),
+            new Reference("horse-legs", parse(
+                    "r..akaer.",
+                    "....a....",
+                    "..h.e.h..",
+                    "...H.H...",
+                    "..P...p..",
+                    ".....h...",
+                    "....P....",
+                    "...H.....",
+                    "....A....",
+                    "R..AK.E.R"), false,
+                    new long[]{45, 2_296, 88_859, 4_229_107}),
+            new Reference("pawns-past-river", parse(
+                    "...ak....",
+                    "...PaP...",
+                    "....P....",
+                    ".........",
+                    ".........",
+                    "p.......p",
+                    "...p.....",
+                    ".....p...",
+                    "....A....",
+                    "...AK...."), true,
+                    new long[]{13, 110, 1_296, 11_318})
+    );
+
+    public record Reference(String name, Board board, boolean isRedToMove, long[] nodes) {
+    }
+
+    public record Result(long nodes, long nanos) {
+        public long nodesPerSecond() {
+            return nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos;
+        }
+    }
+
+    // Count leaf nodes to the given depth
+    public static long perft(Board board, boolean isRedToMove, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        return perft(board, isRedToMove, depth, new int[depth][MoveGenerator.MAX_MOVES]);
+    }
+
+    private static long perft(Board board, boolean isRedToMove, int depth, int[][] buffers) {
+        int[] moves = buffers[depth - 1];
+        int count = MoveValidator.generateLegalMoves(board, isRedToMove, moves);
+        // Bulk count the last ply
+        if (depth == 1) {
+            return count;
+        }
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            int from = MoveGenerator.from(moves[i]);
+            int to = MoveGenerator.to(moves[i]);
+            byte captured = board.makeMove(from, to);
+            nodes += perft(board, !isRedToMove, depth - 1, buffers);
+            board.unmakeMove(from, to, captured);
+        }
+        return nodes;
+    }
+
+    // Split the root moves across threads, each works on its own copy of the board
+    public static Result run(Board board, boolean isRedToMove, int depth, int threads) throws Exception {
+        long start = System.nanoTime();
+        if (threads <= 1 || depth <= 1) {
+            return new Result(perft(board.copy(), isRedToMove, depth), System.nanoTime() - start);
+        }
+
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveValidator.generateLegalMoves(board, isRedToMove, moves);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                futures.add(executor.submit(() -> {
+                    Board child = board.copy();
+                    child.makeMove(MoveGenerator.from(move), MoveGenerator.to(move));
+                    return perft(child, !isRedToMove, depth - 1);
+                }));
+            }
+            long nodes = 0;
+            for (Future<Long> future : futures) {
+                nodes += future.get();
+            }
+            return new Result(nodes, System.nanoTime() - start);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Shared with the benchmark positions
+    public static Board parse(String... rows) {
+        String[][] board = new String[Board.ROWS][Board.COLS];
+        for (int row = 0; row < Board.ROWS; row++) {
+            for (int col = 0; col < Board.COLS; col++) {
+                char letter = rows[row].charAt(col);
+                board[row][col] = letter == '.' ? "" : String.valueOf(letter);
+            }
+        }
+        return Board.fromArray(board);
+    }
+
+    // Usage: Perft [maxDepth] [threads]
+    public static void main(String[] args) throws Exception {
+        int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        boolean isAllPassed = true;
+        for (Reference reference : REFERENCES) {
+            for (int depth = 1; depth <= Math.min(maxDepth, reference.nodes().length); depth++) {
+                Result result = run(reference.board(), reference.isRedToMove(), depth, threads);
+                boolean isPassed = result.nodes() == reference.nodes()[depth - 1];
+                isAllPassed &= isPassed;
+                System.out.printf("%-18s depth %d  nodes %,14d  expected %,14d  %,12d nodes/s  %s%n",
+                        reference.name(), depth, result.nodes(), reference.nodes()[depth - 1],
+                        result.nodesPerSecond(), isPassed ? "OK" : "MISMATCH");
+            }
+        }
+        if (!isAllPassed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.xiangqi.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PerftTest {
+
+    @Test
+    void referencePositionsMatchExpectedNodeCounts() {
+        for (Perft.Reference reference : Perft.REFERENCES) {
+            for (int depth = 1; depth <= 3; depth++) {
+                assertEquals(reference.nodes()[depth - 1],
+                        Perft.perft(reference.board().copy(), reference.isRedToMove(), depth),
+                        reference.name() + " depth " + depth);
+            }
+        }
+    }
+
+    @Test
+    void parallelRunMatchesSequentialCount() throws Exception {
+        Perft.Reference start = Perft.REFERENCES.get(0);
+        assertEquals(start.nodes()[2], Perft.run(start.board(), start.isRedToMove(), 3, 4).nodes());
+    }
+
+}
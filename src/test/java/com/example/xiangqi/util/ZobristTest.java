@@ -0,0 +1,63 @@
+package com.example.xiangqi.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ZobristTest {
+
+    @Test
+    void incrementalHashMatchesFullHashThroughMakeAndUnmake() {
+        for (Perft.Reference reference : Perft.REFERENCES) {
+            Board board = reference.board().copy();
+            checkTree(board, reference.isRedToMove(), Zobrist.hash(board, reference.isRedToMove()), 2, reference.name());
+        }
+    }
+
+    @Test
+    void incrementalHashMatchesFullHashAlongRandomGames() {
+        Random random = new Random(7);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (int game = 0; game < 50; game++) {
+            Board board = BoardUtils.getInitialBoardState();
+            boolean isRedToMove = true;
+            long hash = Zobrist.hash(board, true);
+            for (int ply = 0; ply < 200; ply++) {
+                int count = MoveValidator.generateLegalMoves(board, isRedToMove, moves);
+                if (count == 0) {
+                    break;
+                }
+                int move = moves[random.nextInt(count)];
+                int from = MoveGenerator.from(move);
+                int to = MoveGenerator.to(move);
+                byte movedPiece = board.get(from);
+                byte captured = board.makeMove(from, to);
+                hash = Zobrist.update(hash, movedPiece, from, to, captured);
+                isRedToMove = !isRedToMove;
+                assertEquals(Zobrist.hash(board, isRedToMove), hash, "game " + game + " ply " + ply);
+            }
+        }
+    }
+
+    // Every line to the given depth, the hash must also come back after each unmake
+    private static void checkTree(Board board, boolean isRedToMove, long hash, int depth, String name) {
+        if (depth == 0) {
+            return;
+        }
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveValidator.generateLegalMoves(board, isRedToMove, moves);
+        for (int i = 0; i < count; i++) {
+            int from = MoveGenerator.from(moves[i]);
+            int to = MoveGenerator.to(moves[i]);
+            byte movedPiece = board.get(from);
+            byte captured = board.makeMove(from, to);
+            long childHash = Zobrist.update(hash, movedPiece, from, to, captured);
+            assertEquals(Zobrist.hash(board, !isRedToMove), childHash, name);
+            checkTree(board, !isRedToMove, childHash, depth - 1, name);
+            board.unmakeMove(from, to, captured);
+            assertEquals(Zobrist.hash(board, isRedToMove), hash, name);
+        }
+    }
+}